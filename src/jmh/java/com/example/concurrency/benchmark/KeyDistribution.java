@@ -0,0 +1,52 @@
+package com.example.concurrency.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 벤치마크에서 감소시킬 재고를 고르는 분포.
+ * ZIPF 는 앞쪽 재고일수록 자주 선택되어 소수의 인기 상품에 요청이 몰리는 상황을 만든다.
+ */
+public enum KeyDistribution {
+
+    UNIFORM {
+        @Override
+        double weight(int rank) {
+            return 1.0;
+        }
+    },
+    ZIPF {
+        @Override
+        double weight(int rank) {
+            return 1.0 / Math.pow(rank, ZIPF_EXPONENT);
+        }
+    };
+
+    private static final double ZIPF_EXPONENT = 1.0;
+
+    abstract double weight(int rank);
+
+    /**
+     * 키 개수만큼 누적 분포를 만든다. {@link #next(double[])} 에 넘긴다.
+     */
+    public double[] cumulative(int keyCount) {
+        double[] cdf = new double[keyCount];
+        double sum = 0;
+        for (int i = 0; i < keyCount; i++) {
+            sum += weight(i + 1);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < keyCount; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    public static int next(double[] cdf) {
+        if (cdf.length == 1) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(cdf, ThreadLocalRandom.current().nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, cdf.length - 1);
+    }
+}
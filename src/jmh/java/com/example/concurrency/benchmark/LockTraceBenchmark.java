@@ -0,0 +1,143 @@
+package com.example.concurrency.benchmark;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.FileAppender;
+import com.example.concurrency.lock.StockLockEvent;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import jdk.jfr.Recording;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 락 안에서 추적 정보를 남기는 방식에 따른 락 보유 시간 비교.
+ * LOG 는 예전 StockReentrantLockService 가 감소 한 번에 락 안에서 남기던 INFO 로그 4줄을 파일에 쓴다.
+ * JFR_RECORDING 은 JFR 기록을 켠 상태의 {@link StockLockEvent}, JFR_OFF 는 기록을 켜지 않은 평소 상태다.
+ * DB 를 빼고 락 구간만 재므로 쓰레드 1개일 때의 평균 시간이 곧 락 보유 시간이다.
+ * <pre>
+ * ./gradlew jmh -Djmh.include=LockTraceBenchmark -Djmh.threads=1,4
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class LockTraceBenchmark {
+
+    private static final Long STOCK_ID = 1L;
+
+    @Param({"LOG", "JFR_RECORDING", "JFR_OFF"})
+    public Trace trace;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private Logger logger;
+
+    private FileAppender<ILoggingEvent> appender;
+
+    private Recording recording;
+
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("lock-trace");
+
+        if (trace == Trace.LOG) {
+            LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+            PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+            encoder.setContext(context);
+            encoder.setPattern("%d{yyyy-MM-dd HH:mm:ss.SSS} %5p --- [%15.15t] %-40.40logger{39} : %m%n");
+            encoder.start();
+
+            appender = new FileAppender<>();
+            appender.setContext(context);
+            appender.setFile(directory.resolve("trace.log").toString());
+            appender.setEncoder(encoder);
+            appender.start();
+
+            logger = context.getLogger("lock-trace-benchmark");
+            logger.setAdditive(false);
+            logger.setLevel(ch.qos.logback.classic.Level.INFO);
+            logger.addAppender(appender);
+        }
+        if (trace == Trace.JFR_RECORDING) {
+            recording = new Recording();
+            recording.enable(StockLockEvent.class);
+            recording.setToDisk(true);
+            recording.setDestination(directory.resolve("trace.jfr"));
+            recording.start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (appender != null) {
+            appender.stop();
+        }
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    @Benchmark
+    public void hold(Blackhole blackhole) {
+        lock.lock();
+        try {
+            trace.record(this, "Lock 획득");
+            trace.record(this, "재고 확인");
+            // 재고 확인과 감소 계산 대신
+            Blackhole.consumeCPU(100);
+            trace.record(this, "재고 감소");
+            blackhole.consume(lock.getHoldCount());
+        } finally {
+            trace.record(this, "Lock 해제 완료");
+            lock.unlock();
+        }
+    }
+
+    public enum Trace {
+
+        LOG {
+            @Override
+            void record(LockTraceBenchmark benchmark, String message) {
+                benchmark.logger.info("{}, {}, templateId={}", Thread.currentThread().getName(), message, STOCK_ID);
+            }
+        },
+        JFR_RECORDING {
+            @Override
+            void record(LockTraceBenchmark benchmark, String message) {
+                StockLockEvent.instant("benchmark", StockLockEvent.ACQUIRE, STOCK_ID);
+            }
+        },
+        JFR_OFF {
+            @Override
+            void record(LockTraceBenchmark benchmark, String message) {
+                StockLockEvent.instant("benchmark", StockLockEvent.ACQUIRE, STOCK_ID);
+            }
+        };
+
+        abstract void record(LockTraceBenchmark benchmark, String message);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.concurrency.benchmark;
+
+import com.example.concurrency.service.ShardedStockService;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 조각 수에 따른 한 상품의 감소 처리량. shardCount=1 은 분할하지 않은 것과 같은 경합이다.
+ * 다른 전략과의 비교는 {@link StockDecreaseBenchmark} 의 SHARDED 로 한다.
+ * <pre>
+ * ./gradlew jmh -Djmh.include=ShardedStockBenchmark -Djmh.threads=1,4,16
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ShardedStockBenchmark {
+
+    @Param({"1", "8"})
+    public int shardCount;
+
+    private StockBenchmarkEnvironment environment;
+
+    private ShardedStockService shardedStockService;
+
+    private Long stockId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        environment = new StockBenchmarkEnvironment(new HashMap<>());
+        shardedStockService = environment.getContext().getBean(ShardedStockService.class);
+        stockId = environment.createStocks(1).get(0);
+        shardedStockService.split(stockId, shardCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        environment.close();
+    }
+
+    @Benchmark
+    public void decrease() {
+        shardedStockService.decrease(stockId, 1L);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.concurrency.benchmark;
+
+import com.example.concurrency.ConcurrencyApplication;
+import com.example.concurrency.domain.Stock;
+import com.example.concurrency.repository.StockRepository;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import redis.embedded.RedisServer;
+
+/**
+ * 벤치마크용 실행 환경. 외부 서버 없이 돌 수 있도록 내장 H2 와 내장 Redis 를 띄운다.
+ */
+public class StockBenchmarkEnvironment implements AutoCloseable {
+
+    // 벤치마크 도중 재고가 바닥나지 않을 만큼 크게 잡는다.
+    private static final long INITIAL_QUANTITY = Long.MAX_VALUE / 4;
+
+    private final RedisServer redisServer;
+
+    private final ConfigurableApplicationContext context;
+
+    public StockBenchmarkEnvironment(Map<String, Object> properties) {
+        try {
+            int redisPort = freePort();
+            redisServer = new RedisServer(redisPort);
+            redisServer.start();
+
+            Map<String, Object> defaults = new HashMap<>();
+            defaults.put("spring.redis.host", "127.0.0.1");
+            defaults.put("spring.redis.port", redisPort);
+            defaults.put("spring.jpa.show-sql", false);
+            defaults.put("spring.jpa.properties.hibernate.highlight_sql", false);
+            defaults.put("spring.datasource.hikari.maximum-pool-size", 64);
+            defaults.put("spring.main.banner-mode", "off");
+            defaults.put("logging.level.root", "WARN");
+            defaults.put("stock.write-behind.journal-dir",
+                    Files.createTempDirectory("stock-journal").toString());
+            defaults.putAll(properties);
+
+            // application.yml 보다 우선하도록 커맨드라인 인자로 넘긴다.
+            String[] args = defaults.entrySet().stream()
+                    .map(entry -> "--" + entry.getKey() + "=" + entry.getValue())
+                    .toArray(String[]::new);
+            context = new SpringApplicationBuilder(ConcurrencyApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .run(args);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public ConfigurableApplicationContext getContext() {
+        return context;
+    }
+
+    public List<Long> createStocks(int count) {
+        StockRepository stockRepository = context.getBean(StockRepository.class);
+        List<Long> ids = new ArrayList<>(count);
+        for (long productId = 1; productId <= count; productId++) {
+            ids.add(stockRepository.saveAndFlush(new Stock(productId, INITIAL_QUANTITY)).getId());
+        }
+        return ids;
+    }
+
+    @Override
+    public void close() {
+        try {
+            context.close();
+        } finally {
+            try {
+                redisServer.stop();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
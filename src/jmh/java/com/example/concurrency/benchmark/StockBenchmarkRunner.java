@@ -0,0 +1,45 @@
+package com.example.concurrency.benchmark;
+
+import java.io.File;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 쓰레드 수를 바꿔가며 벤치마크를 실행한다.
+ * <pre>
+ * ./gradlew jmh -Djmh.threads=1,4,16 -Djmh.include=StockDecreaseBenchmark -Djmh.params=strategy=PESSIMISTIC,CONDITIONAL_UPDATE
+ * </pre>
+ * 결과는 build/jmh/ 아래에 쓰레드 수별 JSON 으로 남는다.
+ */
+public class StockBenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = System.getProperty("jmh.include", "StockDecreaseBenchmark");
+        String[] threads = System.getProperty("jmh.threads", "1,4,16").split(",");
+        String params = System.getProperty("jmh.params", "");
+        new File("build/jmh").mkdirs();
+
+        for (String thread : threads) {
+            int threadCount = Integer.parseInt(thread.trim());
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threadCount)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("build/jmh/result-" + threadCount + "-threads.json");
+
+            // strategy=A,B;skuCount=1 형식
+            for (String param : params.split(";")) {
+                if (param.isBlank()) {
+                    continue;
+                }
+                String[] keyValues = param.split("=", 2);
+                options.param(keyValues[0].trim(), keyValues[1].split(","));
+            }
+
+            new Runner(options.build()).run();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.concurrency.benchmark;
+
+import com.example.concurrency.domain.Stock;
+import com.example.concurrency.repository.StockRepository;
+import com.example.concurrency.service.StockBulkService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * 한 건씩 saveAndFlush 하는 기존 방식과 배치 등록/입고로 rowCount 건을 처리하는 시간 비교.
+ * 한 번 실행이 rowCount 건이므로 초당 처리 행 수는 rowCount / 시간 이다.
+ * <pre>
+ * ./gradlew jmh -Djmh.include=StockBulkBenchmark -Djmh.threads=1
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StockBulkBenchmark {
+
+    @Param({"SAVE_AND_FLUSH", "IMPORT", "RESTOCK"})
+    public Method method;
+
+    @Param({"20000"})
+    public int rowCount;
+
+    private StockBenchmarkEnvironment environment;
+
+    private StockRepository stockRepository;
+
+    private StockBulkService stockBulkService;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private List<Stock> stocks;
+
+    private Map<Long, Long> quantities;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        environment = new StockBenchmarkEnvironment(new HashMap<>());
+        stockRepository = environment.getContext().getBean(StockRepository.class);
+        stockBulkService = environment.getContext().getBean(StockBulkService.class);
+        jdbcTemplate = environment.getContext().getBean(JdbcTemplate.class);
+    }
+
+    // SingleShotTime 에서는 실행마다 불린다. 등록은 빈 테이블에서, 입고는 rowCount 건이 있는 테이블에서 시작한다.
+    @Setup(Level.Iteration)
+    public void prepare() {
+        stockRepository.deleteAllInBatch();
+        stocks = new ArrayList<>(rowCount);
+        for (long productId = 1; productId <= rowCount; productId++) {
+            stocks.add(new Stock(productId, 10L));
+        }
+
+        if (method == Method.RESTOCK) {
+            stockBulkService.importStocks(stocks);
+            quantities = new HashMap<>();
+            jdbcTemplate.queryForList("select id from stock", Long.class).forEach(id -> quantities.put(id, 1L));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        environment.close();
+    }
+
+    @Benchmark
+    public int bulk() {
+        switch (method) {
+            case SAVE_AND_FLUSH:
+                stocks.forEach(stockRepository::saveAndFlush);
+                return stocks.size();
+            case IMPORT:
+                return stockBulkService.importStocks(stocks);
+            default:
+                return stockBulkService.restock(quantities);
+        }
+    }
+
+    public enum Method {
+        SAVE_AND_FLUSH,
+        IMPORT,
+        RESTOCK
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.concurrency.benchmark;
+
+import com.example.concurrency.service.StockService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 주문 하나의 품목 수에 따른 {@link StockService#decreaseAll(Map)} 지연시간.
+ * 잠금과 변경이 각각 한 번의 왕복이라 품목 수가 늘어도 지연시간이 품목 수만큼 늘지 않는지 본다.
+ * <pre>
+ * ./gradlew jmh -Djmh.include=StockDecreaseAllBenchmark -Djmh.threads=1
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class StockDecreaseAllBenchmark {
+
+    @Param({"5", "50"})
+    public int itemCount;
+
+    private StockBenchmarkEnvironment environment;
+
+    private StockService stockService;
+
+    private Map<Long, Long> order;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        environment = new StockBenchmarkEnvironment(new HashMap<>());
+        stockService = environment.getContext().getBean(StockService.class);
+
+        // 잠금은 id 순서로 하므로 주문의 품목 순서는 섞어 둔다.
+        List<Long> ids = new ArrayList<>(environment.createStocks(itemCount));
+        Collections.shuffle(ids);
+        order = new LinkedHashMap<>();
+        ids.forEach(id -> order.put(id, 1L));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        environment.close();
+    }
+
+    @Benchmark
+    public void decreaseAll() {
+        stockService.decreaseAll(order);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.concurrency.benchmark;
+
+import com.example.concurrency.benchmark.StockDecreaseStrategy.Decrease;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 재고 감소 전략별 처리량과 지연시간 분포(p50/p99/p999)를 측정한다.
+ * 쓰레드 수는 {@link StockBenchmarkRunner} 에서 바꿔가며 실행한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class StockDecreaseBenchmark {
+
+    @Param({"SYNCHRONIZED", "REENTRANT_LOCK", "PESSIMISTIC", "OPTIMISTIC", "CONDITIONAL_UPDATE", "NAMED_LOCK",
+            "LETTUCE", "REDISSON", "COALESCING", "WRITE_BEHIND", "REDIS_INVENTORY", "PARTITIONED",
+            "SHARDED", "ROUTED"})
+    public StockDecreaseStrategy strategy;
+
+    @Param({"1", "16"})
+    public int skuCount;
+
+    @Param({"UNIFORM", "ZIPF"})
+    public KeyDistribution distribution;
+
+    private StockBenchmarkEnvironment environment;
+
+    private Decrease decrease;
+
+    private List<Long> ids;
+
+    private double[] cdf;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("stock.write-behind.enabled", strategy == StockDecreaseStrategy.WRITE_BEHIND);
+        properties.put("stock.redis-inventory.enabled", strategy == StockDecreaseStrategy.REDIS_INVENTORY);
+        properties.put("stock.partitioned.enabled", strategy == StockDecreaseStrategy.PARTITIONED);
+        environment = new StockBenchmarkEnvironment(properties);
+        ids = environment.createStocks(skuCount);
+        cdf = distribution.cumulative(skuCount);
+        strategy.prepare(environment.getContext(), ids);
+        decrease = strategy.create(environment.getContext());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        environment.close();
+    }
+
+    @Benchmark
+    public void decrease() {
+        decrease.decrease(ids.get(KeyDistribution.next(cdf)), 1L);
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.concurrency.benchmark;
+
+import com.example.concurrency.engine.PartitionedStockEngine;
+import com.example.concurrency.engine.RedisStockEngine;
+import com.example.concurrency.engine.WriteBehindStockEngine;
+import com.example.concurrency.facade.CoalescingStockFacade;
+import com.example.concurrency.facade.LettuceLockStockFacade;
+import com.example.concurrency.facade.NamedLockStockFacade;
+import com.example.concurrency.facade.OptimisticLockStockFacade;
+import com.example.concurrency.facade.RedissonLockStockFacade;
+import com.example.concurrency.service.ShardedStockService;
+import com.example.concurrency.service.StockReentrantLockService;
+import com.example.concurrency.service.StockService;
+import com.example.concurrency.service.StockSynchronizedService;
+import com.example.concurrency.strategy.StockLockRouter;
+import java.util.List;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * 벤치마크 대상 재고 감소 전략.
+ */
+public enum StockDecreaseStrategy {
+
+    SYNCHRONIZED {
+        @Override
+        Decrease create(ApplicationContext context) {
+            return context.getBean(StockSynchronizedService.class)::decreaseProcess;
+        }
+    },
+    REENTRANT_LOCK {
+        @Override
+        Decrease create(ApplicationContext context) {
+            return context.getBean(StockReentrantLockService.class)::decreaseProcess;
+        }
+    },
+    PESSIMISTIC {
+        @Override
+        Decrease create(ApplicationContext context) {
+            return context.getBean(StockService.class)::decreaseWithPessimisticLock;
+        }
+    },
+    OPTIMISTIC {
+        @Override
+        Decrease create(ApplicationContext context) {
+            OptimisticLockStockFacade facade = context.getBean(OptimisticLockStockFacade.class);
+            return (id, quantity) -> {
+                try {
+                    facade.decreaseWithOptimisticLock(id, quantity);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            };
+        }
+    },
+    CONDITIONAL_UPDATE {
+        @Override
+        Decrease create(ApplicationContext context) {
+            return context.getBean(StockService.class)::decreaseWithConditionalUpdate;
+        }
+    },
+    NAMED_LOCK {
+        @Override
+        Decrease create(ApplicationContext context) {
+            return context.getBean(NamedLockStockFacade.class)::decrease;
+        }
+    },
+    LETTUCE {
+        @Override
+        Decrease create(ApplicationContext context) {
+            LettuceLockStockFacade facade = context.getBean(LettuceLockStockFacade.class);
+            return (id, quantity) -> {
+                try {
+                    facade.decrease(id, quantity);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            };
+        }
+    },
+    REDISSON {
+        @Override
+        Decrease create(ApplicationContext context) {
+            return context.getBean(RedissonLockStockFacade.class)::decrease;
+        }
+    },
+    COALESCING {
+        @Override
+        Decrease create(ApplicationContext context) {
+            return context.getBean(CoalescingStockFacade.class)::decrease;
+        }
+    },
+    WRITE_BEHIND {
+        @Override
+        Decrease create(ApplicationContext context) {
+            return context.getBean(WriteBehindStockEngine.class)::decrease;
+        }
+    },
+    REDIS_INVENTORY {
+        @Override
+        Decrease create(ApplicationContext context) {
+            return context.getBean(RedisStockEngine.class)::decrease;
+        }
+    },
+    PARTITIONED {
+        @Override
+        Decrease create(ApplicationContext context) {
+            PartitionedStockEngine engine = context.getBean(PartitionedStockEngine.class);
+            return (id, quantity) -> {
+                try {
+                    engine.decrease(id, quantity);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            };
+        }
+    },
+    SHARDED {
+        @Override
+        void prepare(ApplicationContext context, List<Long> ids) {
+            ShardedStockService service = context.getBean(ShardedStockService.class);
+            ids.forEach(id -> service.split(id, SHARD_COUNT));
+        }
+
+        @Override
+        Decrease create(ApplicationContext context) {
+            return context.getBean(ShardedStockService.class)::decrease;
+        }
+    },
+    ROUTED {
+        @Override
+        Decrease create(ApplicationContext context) {
+            return context.getBean(StockLockRouter.class)::decrease;
+        }
+    };
+
+    private static final int SHARD_COUNT = 8;
+
+    /**
+     * 측정 전에 재고를 전략에 맞게 준비한다. (기본은 아무것도 하지 않음)
+     */
+    void prepare(ApplicationContext context, List<Long> ids) {
+    }
+
+    abstract Decrease create(ApplicationContext context);
+
+    @FunctionalInterface
+    interface Decrease {
+
+        void decrease(Long id, Long quantity);
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.concurrency.admission;
+
+import com.example.concurrency.lock.LockAcquisitionTimeoutException;
+import com.example.concurrency.metrics.StockMetrics;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 재고별 동시 요청 수를 {@link StockConcurrencyLimit} 안으로 제한한다.
+ * 한도를 넘는 요청은 락 앞에서 기다리지 않고 바로 {@link StockOverloadedException} 으로 거절되므로,
+ * 받아들인 요청의 대기 시간은 한도 만큼의 요청 처리 시간으로 묶인다.
+ */
+@Component
+public class StockAdmissionLimiter {
+
+    private final double initialLimit;
+
+    private final double minLimit;
+
+    private final double maxLimit;
+
+    private final double backoffRatio;
+
+    private final long targetLatencyNanos;
+
+    private final Counter rejected;
+
+    // 한도는 최근에 요청이 온 재고만 유지한다. 크기로 내보내면 처리 중인 요청이 있는 한도도 빠질 수 있어서(새 한도로 한도를 넘게 됨)
+    // 오래 요청이 없던 재고만 내보낸다. 요청은 락 대기 시간 안에 끝나므로 처리 중인 한도가 만료될 일은 없다.
+    private final Cache<Long, StockConcurrencyLimit> limits = Caffeine.newBuilder()
+            .expireAfterAccess(Duration.ofMinutes(10))
+            .build();
+
+    public StockAdmissionLimiter(StockMetrics stockMetrics,
+                                 @Value("${stock.admission.initial-limit:20}") int initialLimit,
+                                 @Value("${stock.admission.min-limit:1}") int minLimit,
+                                 @Value("${stock.admission.max-limit:200}") int maxLimit,
+                                 @Value("${stock.admission.backoff-ratio:0.9}") double backoffRatio,
+                                 @Value("${stock.admission.target-latency:100ms}") Duration targetLatency) {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.targetLatencyNanos = targetLatency.toNanos();
+        this.rejected = stockMetrics.admissionRejected();
+    }
+
+    /**
+     * @throws StockOverloadedException 처리 중인 요청이 한도만큼 있을 때
+     */
+    public void execute(Long id, Admitted admitted) throws InterruptedException {
+        StockConcurrencyLimit limit = getLimit(id);
+        if (!limit.tryAcquire()) {
+            rejected.increment();
+            throw new StockOverloadedException(id, limit.getLimit());
+        }
+
+        long start = System.nanoTime();
+        boolean timedOut = false;
+        try {
+            admitted.run();
+        } catch (LockAcquisitionTimeoutException e) {
+            timedOut = true;
+            throw e;
+        } finally {
+            long now = System.nanoTime();
+            boolean overloaded = timedOut || now - start > targetLatencyNanos;
+            limit.release(overloaded, minLimit, maxLimit, backoffRatio, now, targetLatencyNanos);
+        }
+    }
+
+    public StockConcurrencyLimit getLimit(Long id) {
+        return limits.get(id, key -> new StockConcurrencyLimit(initialLimit));
+    }
+
+    @FunctionalInterface
+    public interface Admitted {
+
+        void run() throws InterruptedException;
+    }
+}
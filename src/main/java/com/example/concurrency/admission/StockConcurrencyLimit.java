@@ -0,0 +1,54 @@
+package com.example.concurrency.admission;
+
+/**
+ * 재고 id 하나에 동시에 처리할 수 있는 요청 수. AIMD 로 조절한다.
+ * 요청이 목표 지연 안에 끝나면 한도를 조금씩(요청마다 1/limit) 늘리고, 넘기거나 락을 못 잡으면 비율로 줄인다.
+ * 줄이는 것은 목표 지연 한 구간에 한 번만 한다. 같은 혼잡으로 동시에 늦어진 요청들이 한도를 거듭 곱해 바닥까지 내리지 않게 한다.
+ */
+public class StockConcurrencyLimit {
+
+    private double limit;
+
+    private int inFlight;
+
+    private boolean backedOff;
+
+    private long lastBackoffNanos;
+
+    StockConcurrencyLimit(double limit) {
+        this.limit = limit;
+    }
+
+    synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /*
+    한도를 절반도 쓰지 않는 동안에는 늘리지 않는다. 부하가 없을 때 한도가 끝없이 커지지 않게 한다.
+     */
+    synchronized void release(boolean overloaded, double minLimit, double maxLimit, double backoffRatio,
+                              long nowNanos, long windowNanos) {
+        if (overloaded) {
+            if (!backedOff || nowNanos - lastBackoffNanos >= windowNanos) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                backedOff = true;
+                lastBackoffNanos = nowNanos;
+            }
+        } else if (inFlight * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        inFlight--;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+}
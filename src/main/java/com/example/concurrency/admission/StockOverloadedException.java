@@ -0,0 +1,8 @@
+package com.example.concurrency.admission;
+
+public class StockOverloadedException extends RuntimeException {
+
+    public StockOverloadedException(Long id, int limit) {
+        super("처리 중인 요청이 한도를 넘음: id=" + id + ", limit=" + limit);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.concurrency.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 재고 수량 로컬 캐시.
+ * 조회는 락 없이 이루어지고, 크기와 TTL 로 메모리가 제한된다.
+ * TTL 이 지나면 DB 에서 다시 읽기 때문에 다른 노드에서 쓴 값도 TTL 안에 반영된다.
+ * 엔티티가 아니라 수량만 저장하므로, 어느 트랜잭션에서 읽었든 영속성 컨텍스트와 묶이지 않는다.
+ */
+@Component
+public class StockCache {
+
+    private final Cache<Long, Long> cache;
+
+    public StockCache(@Value("${stock.cache.maximum-size:10000}") long maximumSize,
+                      @Value("${stock.cache.expire-after-write:30s}") Duration expireAfterWrite) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .build();
+    }
+
+    public Long get(Long id, Function<Long, Long> loader) {
+        return cache.get(id, loader);
+    }
+
+    public void put(Long id, Long quantity) {
+        cache.put(id, quantity);
+    }
+
+    public void invalidate(Long id) {
+        cache.invalidate(id);
+    }
+
+    public long size() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+}
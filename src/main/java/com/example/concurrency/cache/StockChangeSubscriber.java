@@ -0,0 +1,25 @@
+package com.example.concurrency.cache;
+
+import com.example.concurrency.service.StockAvailabilityService;
+import java.nio.charset.StandardCharsets;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * 다른 노드에서 바뀐 재고를 로컬 재고 조회 캐시에서 지운다.
+ */
+@Component
+public class StockChangeSubscriber implements MessageListener {
+
+    private final StockAvailabilityService stockAvailabilityService;
+
+    public StockChangeSubscriber(StockAvailabilityService stockAvailabilityService) {
+        this.stockAvailabilityService = stockAvailabilityService;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        stockAvailabilityService.invalidate(Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8)));
+    }
+}
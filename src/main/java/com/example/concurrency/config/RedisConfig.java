@@ -0,0 +1,38 @@
+package com.example.concurrency.config;
+
+import com.example.concurrency.cache.StockChangeSubscriber;
+import com.example.concurrency.lock.RedisLockNotifier;
+import com.example.concurrency.repository.RedisLockRepository;
+import com.example.concurrency.service.StockAvailabilityService;
+import java.time.Duration;
+import org.redisson.spring.starter.RedissonAutoConfigurationCustomizer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+@Configuration
+public class RedisConfig {
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       RedisLockNotifier redisLockNotifier,
+                                                                       StockChangeSubscriber stockChangeSubscriber) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(redisLockNotifier, new ChannelTopic(RedisLockRepository.RELEASE_CHANNEL));
+        container.addMessageListener(stockChangeSubscriber, new ChannelTopic(StockAvailabilityService.CHANGED_CHANNEL));
+        return container;
+    }
+
+    /**
+     * leaseTime 없이 잡은 Redisson 락의 lease. watchdog 이 lease/3 마다 갱신한다.
+     */
+    @Bean
+    public RedissonAutoConfigurationCustomizer redissonLockWatchdog(
+            @Value("${stock.redisson-lock.watchdog-timeout:3s}") Duration watchdogTimeout) {
+        return config -> config.setLockWatchdogTimeout(watchdogTimeout.toMillis());
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.concurrency.config;
+
+import com.example.concurrency.facade.CoalescingStockFacade;
+import com.example.concurrency.facade.LettuceLockStockFacade;
+import com.example.concurrency.facade.NamedLockStockFacade;
+import com.example.concurrency.facade.OptimisticLockStockFacade;
+import com.example.concurrency.facade.RedissonLockStockFacade;
+import com.example.concurrency.service.StockService;
+import com.example.concurrency.strategy.StockLockStrategy;
+import com.example.concurrency.strategy.StockLockType;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class StockLockStrategyConfig {
+
+    @Bean
+    public StockLockStrategy optimisticStockLockStrategy(OptimisticLockStockFacade facade) {
+        return StockLockStrategy.of(StockLockType.OPTIMISTIC, facade::decreaseWithOptimisticLock);
+    }
+
+    @Bean
+    public StockLockStrategy pessimisticStockLockStrategy(StockService stockService) {
+        return StockLockStrategy.of(StockLockType.PESSIMISTIC, stockService::decreaseWithPessimisticLock);
+    }
+
+    @Bean
+    public StockLockStrategy conditionalUpdateStockLockStrategy(StockService stockService) {
+        return StockLockStrategy.of(StockLockType.CONDITIONAL_UPDATE, stockService::decreaseWithConditionalUpdate);
+    }
+
+    @Bean
+    public StockLockStrategy coalescingStockLockStrategy(CoalescingStockFacade facade) {
+        return StockLockStrategy.of(StockLockType.COALESCING, facade::decrease);
+    }
+
+    @Bean
+    public StockLockStrategy namedLockStockLockStrategy(NamedLockStockFacade facade) {
+        return StockLockStrategy.of(StockLockType.NAMED_LOCK, facade::decrease);
+    }
+
+    @Bean
+    public StockLockStrategy lettuceStockLockStrategy(LettuceLockStockFacade facade) {
+        return StockLockStrategy.of(StockLockType.LETTUCE, facade::decrease);
+    }
+
+    @Bean
+    public StockLockStrategy redissonStockLockStrategy(RedissonLockStockFacade facade) {
+        return StockLockStrategy.of(StockLockType.REDISSON, facade::decrease);
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.concurrency.controller;
+
+public class StockAvailabilityResponse {
+
+    private final Long stockId;
+
+    private final Long quantity;
+
+    public StockAvailabilityResponse(Long stockId, Long quantity) {
+        this.stockId = stockId;
+        this.quantity = quantity;
+    }
+
+    public Long getStockId() {
+        return stockId;
+    }
+
+    public Long getQuantity() {
+        return quantity;
+    }
+
+    public boolean isAvailable() {
+        return quantity > 0;
+    }
+}
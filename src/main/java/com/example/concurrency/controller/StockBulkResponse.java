@@ -0,0 +1,14 @@
+package com.example.concurrency.controller;
+
+public class StockBulkResponse {
+
+    private final int count;
+
+    public StockBulkResponse(int count) {
+        this.count = count;
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
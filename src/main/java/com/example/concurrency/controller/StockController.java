@@ -0,0 +1,135 @@
+package com.example.concurrency.controller;
+
+import com.example.concurrency.admission.StockAdmissionLimiter;
+import com.example.concurrency.admission.StockOverloadedException;
+import com.example.concurrency.domain.InsufficientStockException;
+import com.example.concurrency.domain.Stock;
+import com.example.concurrency.lock.LockAcquisitionTimeoutException;
+import com.example.concurrency.service.StockAvailabilityService;
+import com.example.concurrency.service.StockBulkService;
+import com.example.concurrency.strategy.StockLockRouter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/stocks")
+public class StockController {
+
+    private final StockAvailabilityService stockAvailabilityService;
+
+    private final StockAdmissionLimiter stockAdmissionLimiter;
+
+    private final StockLockRouter stockLockRouter;
+
+    private final StockBulkService stockBulkService;
+
+    public StockController(StockAvailabilityService stockAvailabilityService,
+                           StockAdmissionLimiter stockAdmissionLimiter,
+                           StockLockRouter stockLockRouter,
+                           StockBulkService stockBulkService) {
+        this.stockAvailabilityService = stockAvailabilityService;
+        this.stockAdmissionLimiter = stockAdmissionLimiter;
+        this.stockLockRouter = stockLockRouter;
+        this.stockBulkService = stockBulkService;
+    }
+
+    /**
+     * 판매 가능 수량. max-staleness 만큼 늦을 수 있다.
+     */
+    @GetMapping("/{id}/availability")
+    public StockAvailabilityResponse getAvailability(@PathVariable Long id) {
+        return new StockAvailabilityResponse(id, stockAvailabilityService.getAvailableQuantity(id));
+    }
+
+    /**
+     * 재고별 동시 요청 한도 안에서만 처리한다. 한도를 넘으면 락을 기다리지 않고 429 로 거절한다.
+     */
+    @PostMapping("/{id}/decrease")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void decrease(@PathVariable Long id, @RequestBody StockQuantityRequest request) throws InterruptedException {
+        Long quantity = positive(request);
+        stockAdmissionLimiter.execute(id, () -> stockLockRouter.decrease(id, quantity));
+    }
+
+    @PostMapping("/{id}/increase")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void increase(@PathVariable Long id, @RequestBody StockQuantityRequest request) throws InterruptedException {
+        Long quantity = positive(request);
+        stockAdmissionLimiter.execute(id, () -> stockLockRouter.increase(id, quantity));
+    }
+
+    @PostMapping("/import")
+    public StockBulkResponse importStocks(@RequestBody List<StockImportRequest> requests) {
+        List<Stock> stocks = new ArrayList<>(requests.size());
+        for (StockImportRequest request : requests) {
+            if (request.getProductId() == null || request.getQuantity() == null || request.getQuantity() < 0) {
+                throw new IllegalArgumentException("productId 와 0 이상의 quantity 가 필요합니다.");
+            }
+            stocks.add(new Stock(request.getProductId(), request.getQuantity()));
+        }
+        return new StockBulkResponse(stockBulkService.importStocks(stocks));
+    }
+
+    /**
+     * 같은 재고가 여러 번 오면 수량을 합친다.
+     */
+    @PostMapping("/restock")
+    public StockBulkResponse restock(@RequestBody List<StockRestockRequest> requests) {
+        Map<Long, Long> quantities = new HashMap<>();
+        for (StockRestockRequest request : requests) {
+            if (request.getStockId() == null || request.getQuantity() == null || request.getQuantity() <= 0) {
+                throw new IllegalArgumentException("stockId 와 1 이상의 quantity 가 필요합니다.");
+            }
+            quantities.merge(request.getStockId(), request.getQuantity(), Long::sum);
+        }
+        return new StockBulkResponse(stockBulkService.restock(quantities));
+    }
+
+    @ExceptionHandler(StockOverloadedException.class)
+    public ResponseEntity<Void> overloaded() {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .build();
+    }
+
+    @ExceptionHandler(LockAcquisitionTimeoutException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public void lockTimeout() {
+    }
+
+    @ExceptionHandler(InsufficientStockException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public void insufficient() {
+    }
+
+    @ExceptionHandler(NoSuchElementException.class)
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public void notFound() {
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public void badRequest() {
+    }
+
+    private Long positive(StockQuantityRequest request) {
+        if (request.getQuantity() == null || request.getQuantity() <= 0) {
+            throw new IllegalArgumentException("quantity 는 1 이상이어야 합니다.");
+        }
+        return request.getQuantity();
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.concurrency.controller;
+
+public class StockImportRequest {
+
+    private Long productId;
+
+    private Long quantity;
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public Long getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Long quantity) {
+        this.quantity = quantity;
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.concurrency.controller;
+
+public class StockQuantityRequest {
+
+    private Long quantity;
+
+    public Long getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Long quantity) {
+        this.quantity = quantity;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.concurrency.controller;
+
+public class StockRestockRequest {
+
+    private Long stockId;
+
+    private Long quantity;
+
+    public Long getStockId() {
+        return stockId;
+    }
+
+    public void setStockId(Long stockId) {
+        this.stockId = stockId;
+    }
+
+    public Long getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Long quantity) {
+        this.quantity = quantity;
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.concurrency.domain;
+
+public class InsufficientStockException extends RuntimeException {
+
+    public InsufficientStockException(Long quantity, Long requested) {
+        super("재고 부족: 현재=" + quantity + ", 요청=" + requested);
+    }
+
+    public InsufficientStockException(Long requested) {
+        super("재고 부족: 요청=" + requested);
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.concurrency.domain;
+
+public enum ReservationStatus {
+
+    RESERVED,
+    CONFIRMED,
+    CANCELLED,
+    EXPIRED
+}
@@ -4,20 +4,34 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Version;
+import org.hibernate.annotations.DynamicUpdate;
 
+/**
+ * UPDATE 는 바뀐 컬럼만 보낸다. (@DynamicUpdate)
+ */
 @Entity
+@DynamicUpdate
 public class Stock {
 
+    // IDENTITY 는 INSERT 마다 id 를 받아야 해서 INSERT 배치가 꺼진다. 시퀀스 값을 allocationSize 만큼 한 번에 받는다. (pooled)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stock_seq")
+    @SequenceGenerator(name = "stock_seq", sequenceName = "stock_seq", allocationSize = 100)
     private Long id;
 
     private Long productId;
 
     private Long quantity;
 
-//    @Version
+    // 예약(결제 대기) 중인 수량. quantity 에서 빠져 있고, 확정되면 사라지고 취소/만료되면 quantity 로 돌아간다.
+    private Long reserved = 0L;
+
+    // 마지막으로 이 재고를 바꾼 분산 락 소유자의 펜싱 토큰. 더 작은 토큰으로는 바꿀 수 없다.
+    private Long fenceToken = 0L;
+
+    @Version
     private Long version;
 
     public Stock() {
@@ -28,13 +42,25 @@ public class Stock {
         this.quantity = quantity;
     }
 
+    public Long getId() {
+        return id;
+    }
+
     public Long getQuantity() {
         return quantity;
     }
 
+    public Long getReserved() {
+        return reserved;
+    }
+
+    public Long getFenceToken() {
+        return fenceToken;
+    }
+
     public void decrease(Long quantity) {
         if (this.quantity - quantity < 0) {
-            throw new RuntimeException("foo");
+            throw new InsufficientStockException(this.quantity, quantity);
         }
 
         this.quantity = this.quantity - quantity;
@@ -0,0 +1,29 @@
+package com.example.concurrency.domain;
+
+/**
+ * 재고 수량이 바뀌었음을 알린다. 트랜잭션 안에서 발행되면 커밋된 뒤에 전달된다.
+ */
+public class StockChangedEvent {
+
+    private final Long stockId;
+
+    // 변경한 락 서비스. 그 서비스는 자기 캐시와 대기자를 이미 처리했다. 락 서비스가 아닌 쪽은 null
+    private final Object origin;
+
+    public StockChangedEvent(Long stockId) {
+        this(stockId, null);
+    }
+
+    public StockChangedEvent(Long stockId, Object origin) {
+        this.stockId = stockId;
+        this.origin = origin;
+    }
+
+    public Long getStockId() {
+        return stockId;
+    }
+
+    public Object getOrigin() {
+        return origin;
+    }
+}
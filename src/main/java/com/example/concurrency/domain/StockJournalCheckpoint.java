@@ -0,0 +1,28 @@
+package com.example.concurrency.domain;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * write-behind 저널 디렉터리별로 DB 에 반영한 마지막 세그먼트 번호.
+ * 증감 반영과 같은 트랜잭션에서 바뀌므로, 재시작할 때 이 번호까지의 세그먼트는 다시 반영하지 않는다.
+ */
+@Entity
+public class StockJournalCheckpoint {
+
+    @Id
+    private String journal;
+
+    private Long segmentNo;
+
+    public StockJournalCheckpoint() {
+    }
+
+    public String getJournal() {
+        return journal;
+    }
+
+    public Long getSegmentNo() {
+        return segmentNo;
+    }
+}
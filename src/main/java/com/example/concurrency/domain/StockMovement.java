@@ -0,0 +1,48 @@
+package com.example.concurrency.domain;
+
+import java.time.Instant;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * 재고 변경 하나. 추가만 하고 고치거나 지우지 않는다.
+ * 재고의 수량은 스냅샷 이후의 변경을 (stockId, id) 인덱스로 순서대로 더해서 구한다.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_stock_movement_stock_id_id", columnList = "stockId, id"))
+public class StockMovement {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long stockId;
+
+    // 감소는 음수
+    private Long delta;
+
+    private Instant createdAt;
+
+    public StockMovement() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getStockId() {
+        return stockId;
+    }
+
+    public Long getDelta() {
+        return delta;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+}
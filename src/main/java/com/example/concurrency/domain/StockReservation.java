@@ -0,0 +1,63 @@
+package com.example.concurrency.domain;
+
+import java.time.Instant;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * 결제가 끝날 때까지 잡아두는 재고 예약.
+ * 만료 처리는 (status, expiresAt) 인덱스로 만료된 예약만 찾는다.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_stock_reservation_status_expires_at", columnList = "status, expiresAt"))
+public class StockReservation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long stockId;
+
+    private Long quantity;
+
+    @Enumerated(EnumType.STRING)
+    private ReservationStatus status;
+
+    private Instant expiresAt;
+
+    public StockReservation() {
+    }
+
+    public StockReservation(Long stockId, Long quantity, Instant expiresAt) {
+        this.stockId = stockId;
+        this.quantity = quantity;
+        this.status = ReservationStatus.RESERVED;
+        this.expiresAt = expiresAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getStockId() {
+        return stockId;
+    }
+
+    public Long getQuantity() {
+        return quantity;
+    }
+
+    public ReservationStatus getStatus() {
+        return status;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+}
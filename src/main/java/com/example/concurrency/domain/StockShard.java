@@ -0,0 +1,56 @@
+package com.example.concurrency.domain;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * 재고 하나의 수량을 여러 행으로 나눈 조각.
+ * 감소 요청이 조각마다 다른 행을 잠그므로 한 상품에 대한 쓰기가 한 행에 몰리지 않는다.
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_stock_shard_stock_id_shard_no", columnNames = {"stockId", "shardNo"}))
+public class StockShard {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long stockId;
+
+    private Integer shardNo;
+
+    private Long quantity;
+
+    public StockShard() {
+    }
+
+    public StockShard(Long stockId, Integer shardNo, Long quantity) {
+        this.stockId = stockId;
+        this.shardNo = shardNo;
+        this.quantity = quantity;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getStockId() {
+        return stockId;
+    }
+
+    public Integer getShardNo() {
+        return shardNo;
+    }
+
+    public Long getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Long quantity) {
+        this.quantity = quantity;
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.concurrency.domain;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * lastMovementId 까지의 변경을 반영한 재고 수량.
+ * 재고 수량은 이 값에 lastMovementId 이후의 {@link StockMovement} 를 더한 값이다.
+ */
+@Entity
+public class StockSnapshot {
+
+    @Id
+    private Long stockId;
+
+    private Long quantity;
+
+    private Long lastMovementId;
+
+    public StockSnapshot() {
+    }
+
+    public Long getStockId() {
+        return stockId;
+    }
+
+    public Long getQuantity() {
+        return quantity;
+    }
+
+    public Long getLastMovementId() {
+        return lastMovementId;
+    }
+}
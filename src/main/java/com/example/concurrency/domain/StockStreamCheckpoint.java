@@ -0,0 +1,28 @@
+package com.example.concurrency.domain;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Redis 재고 변경 stream 별로 DB 에 반영한 마지막 기록 id.
+ * 증감 반영과 같은 트랜잭션에서 바뀌므로, ack 전에 죽어서 다시 읽은 기록 중 이 id 까지는 다시 반영하지 않는다.
+ */
+@Entity
+public class StockStreamCheckpoint {
+
+    @Id
+    private String stream;
+
+    private String recordId;
+
+    public StockStreamCheckpoint() {
+    }
+
+    public String getStream() {
+        return stream;
+    }
+
+    public String getRecordId() {
+        return recordId;
+    }
+}
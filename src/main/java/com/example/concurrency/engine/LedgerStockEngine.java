@@ -0,0 +1,245 @@
+package com.example.concurrency.engine;
+
+import com.example.concurrency.domain.InsufficientStockException;
+import com.example.concurrency.metrics.StockMetrics;
+import io.micrometer.core.instrument.Timer;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 재고 변경을 stock 행에 덮어쓰지 않고 {@link com.example.concurrency.domain.StockMovement} 로 추가만 한다.
+ * <p>
+ * 수량은 메모리의 재고별 카운터에서 읽는다. 감소는 카운터에서 CAS 로 먼저 빼서 음수가 되지 않게 하고,
+ * 변경은 큐에 쌓여 리더 쓰레드가 batch INSERT 한 번으로 기록한다. 같은 행을 고치지 않으므로 행 잠금 경합이 없다.
+ * 증가는 기록이 커밋된 뒤에 카운터에 더해지므로, 기록되지 않은 증가분을 다른 요청이 가져가지 않는다.
+ * <p>
+ * 주기적으로 {@link com.example.concurrency.domain.StockSnapshot} 을 남기고, 시작할 때는 스냅샷에 그 이후 변경만 더해 카운터를 만든다.
+ * 스냅샷이 없는 재고는 stock 행의 수량을 시작 수량으로 본다. 이 엔진을 켜면 stock 행의 수량은 바뀌지 않는다.
+ * 카운터가 메모리에 있으므로 노드 하나에서만 켠다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "stock.ledger", name = "enabled", havingValue = "true")
+public class LedgerStockEngine {
+
+    private static final String INSERT_MOVEMENT = "insert into stock_movement (stock_id, delta, created_at) values (?, ?, ?)";
+
+    // 스냅샷(없으면 stock 행)에 그 이후의 변경만 더한다. 이후 변경은 (stock_id, id) 인덱스 범위로 읽는다.
+    private static final String SELECT_QUANTITY = "select st.id, coalesce(s.quantity, st.quantity) + coalesce("
+            + "(select sum(m.delta) from stock_movement m where m.stock_id = st.id and m.id > coalesce(s.last_movement_id, 0)), 0) "
+            + "from stock st left join stock_snapshot s on s.stock_id = st.id";
+
+    private static final String SELECT_TAIL = "select m.stock_id, sum(m.delta), max(s.stock_id) from stock_movement m "
+            + "left join stock_snapshot s on s.stock_id = m.stock_id "
+            + "where m.id > coalesce(s.last_movement_id, 0) and m.id <= ? group by m.stock_id";
+
+    private static final String UPDATE_SNAPSHOT = "update stock_snapshot set quantity = quantity + ?, last_movement_id = ? where stock_id = ?";
+
+    private static final String INSERT_SNAPSHOT = "insert into stock_snapshot (stock_id, quantity, last_movement_id) "
+            + "select id, quantity + ?, ? from stock where id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int batchSize;
+
+    private final Timer flushTimer;
+
+    private final ConcurrentHashMap<Long, AtomicLong> quantities = new ConcurrentHashMap<>();
+
+    private final Queue<Movement> pending = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean appending = new AtomicBoolean();
+
+    public LedgerStockEngine(JdbcTemplate jdbcTemplate,
+                             TransactionTemplate transactionTemplate,
+                             StockMetrics stockMetrics,
+                             @Value("${stock.ledger.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.flushTimer = stockMetrics.flush("ledger");
+    }
+
+    /**
+     * 모든 재고의 카운터를 쿼리 한 번으로 다시 만든다.
+     */
+    @PostConstruct
+    public void rebuild() {
+        long start = System.nanoTime();
+        jdbcTemplate.query(SELECT_QUANTITY, rs -> {
+            quantities.put(rs.getLong(1), new AtomicLong(rs.getLong(2)));
+        });
+        log.info("원장에서 재고 {}건 복원 ({}ms)", quantities.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * @throws InsufficientStockException 재고가 부족할 때. 원장에는 남지 않는다.
+     */
+    public void decrease(Long id, Long quantity) {
+        AtomicLong counter = counter(id);
+        long current;
+        do {
+            current = counter.get();
+            if (current < quantity) {
+                throw new InsufficientStockException(current, quantity);
+            }
+        } while (!counter.compareAndSet(current, current - quantity));
+
+        append(new Movement(id, -quantity, counter));
+    }
+
+    public void increase(Long id, Long quantity) {
+        append(new Movement(id, quantity, counter(id)));
+    }
+
+    public Long getQuantity(Long id) {
+        return counter(id).get();
+    }
+
+    /**
+     * 마지막 스냅샷 이후 변경이 있는 재고만 스냅샷을 앞으로 당긴다.
+     * 기록은 한 번에 한 배치만 진행되므로, 보이는 가장 큰 id 이하의 변경은 모두 커밋된 것이다.
+     */
+    @Scheduled(fixedDelayString = "${stock.ledger.snapshot-interval-millis:60000}")
+    public synchronized void snapshot() {
+        Long lastMovementId = jdbcTemplate.queryForObject("select max(id) from stock_movement", Long.class);
+        if (lastMovementId == null) {
+            return;
+        }
+
+        List<Object[]> updates = new ArrayList<>();
+        List<Object[]> inserts = new ArrayList<>();
+        jdbcTemplate.query(SELECT_TAIL, rs -> {
+            Object[] args = {rs.getLong(2), lastMovementId, rs.getLong(1)};
+            if (rs.getObject(3) == null) {
+                inserts.add(args);
+            } else {
+                updates.add(args);
+            }
+        }, lastMovementId);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(UPDATE_SNAPSHOT, updates);
+            jdbcTemplate.batchUpdate(INSERT_SNAPSHOT, inserts);
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        snapshot();
+    }
+
+    private AtomicLong counter(Long id) {
+        return quantities.computeIfAbsent(id, this::load);
+    }
+
+    private AtomicLong load(Long id) {
+        List<Long> loaded = jdbcTemplate.query(SELECT_QUANTITY + " where st.id = ?", (rs, rowNum) -> rs.getLong(2), id);
+        if (loaded.isEmpty()) {
+            throw new NoSuchElementException("stock not found: " + id);
+        }
+        return new AtomicLong(loaded.get(0));
+    }
+
+    /*
+    큐에 넣은 뒤 리더가 되기를 시도한다. 실패하면 현재 리더가 내 변경까지 기록한다.
+    리더가 하나뿐이므로 배치는 id 순서대로 커밋된다. (스냅샷이 이것에 기댄다)
+     */
+    private void append(Movement movement) {
+        pending.add(movement);
+
+        while (!pending.isEmpty() && appending.compareAndSet(false, true)) {
+            try {
+                List<Movement> batch = new ArrayList<>();
+                Movement next;
+                while (batch.size() < batchSize && (next = pending.poll()) != null) {
+                    batch.add(next);
+                }
+                if (!batch.isEmpty()) {
+                    write(batch);
+                }
+            } finally {
+                appending.set(false);
+            }
+        }
+
+        try {
+            movement.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void write(List<Movement> batch) {
+        Timestamp now = Timestamp.from(Instant.now());
+        List<Object[]> args = new ArrayList<>(batch.size());
+        for (Movement movement : batch) {
+            args.add(new Object[]{movement.stockId, movement.delta, now});
+        }
+
+        long start = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_MOVEMENT, args));
+        } catch (RuntimeException e) {
+            // 기록되지 않은 감소는 카운터에 되돌린다. 증가는 아직 더하지 않았다.
+            for (Movement movement : batch) {
+                if (movement.delta < 0) {
+                    movement.counter.addAndGet(-movement.delta);
+                }
+                movement.result.completeExceptionally(e);
+            }
+            return;
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        for (Movement movement : batch) {
+            if (movement.delta > 0) {
+                movement.counter.addAndGet(movement.delta);
+            }
+            movement.result.complete(null);
+        }
+    }
+
+    private static class Movement {
+
+        private final Long stockId;
+
+        private final long delta;
+
+        private final AtomicLong counter;
+
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        private Movement(Long stockId, long delta, AtomicLong counter) {
+            this.stockId = stockId;
+            this.delta = delta;
+            this.counter = counter;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.concurrency.engine;
+
+import java.time.Duration;
+
+public class PartitionBusyException extends RuntimeException {
+
+    public PartitionBusyException(int partition) {
+        super("파티션 큐가 가득 참: partition=" + partition);
+    }
+
+    public PartitionBusyException(int partition, Duration timeout) {
+        super("파티션 응답 시간 초과: partition=" + partition + ", timeout=" + timeout);
+    }
+}
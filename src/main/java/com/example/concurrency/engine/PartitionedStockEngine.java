@@ -0,0 +1,331 @@
+package com.example.concurrency.engine;
+
+import com.example.concurrency.domain.InsufficientStockException;
+import com.example.concurrency.metrics.StockMetrics;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 재고 id 의 해시로 고른 파티션 하나가 그 재고의 모든 변경을 처리한다. (파티션마다 쓰레드 하나)
+ * <p>
+ * 한 재고의 감소/증가는 항상 같은 쓰레드에서 차례로 실행되므로 락이 없다.
+ * 파티션 쓰레드는 큐에 쌓인 요청을 한 번에 꺼내 처리하고, 재고별 증감 합계를 batch UPDATE 한 번으로 반영한 뒤에 응답한다.
+ * 큐와 수량 캐시의 크기는 파티션마다 고정되어 있고, 큐가 가득 차면 {@link PartitionBusyException} 으로 거절한다.
+ * <p>
+ * DB 에는 수량이 아니라 증감만 쓰고, 음수가 되는 UPDATE 는 조건으로 막는다. 다른 경로(HTTP 증가, 대량 입고, 예약 등)가
+ * 같은 재고를 바꿔도 덮어쓰지 않는다. 조건에 걸린 재고는 DB 에서 다시 읽어 그 재고의 요청만 다시 처리한다.
+ */
+@Component
+@ConditionalOnProperty(prefix = "stock.partitioned", name = "enabled", havingValue = "true")
+public class PartitionedStockEngine {
+
+    private static final String UPDATE_QUANTITY = "update stock set quantity = quantity + ?, version = version + 1 "
+            + "where id = ? and quantity + ? >= 0";
+
+    // 다른 경로의 변경과 계속 충돌하면 이 횟수 뒤에 실패로 응답한다.
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Timer flushTimer;
+
+    private final Partition[] partitions;
+
+    private final int batchSize;
+
+    private final int maxCachedStocks;
+
+    private final long enqueueTimeoutNanos;
+
+    private final Duration resultTimeout;
+
+    public PartitionedStockEngine(JdbcTemplate jdbcTemplate,
+                                  TransactionTemplate transactionTemplate,
+                                  StockMetrics stockMetrics,
+                                  @Value("${stock.partitioned.partitions:8}") int partitionCount,
+                                  @Value("${stock.partitioned.queue-capacity:1024}") int queueCapacity,
+                                  @Value("${stock.partitioned.batch-size:256}") int batchSize,
+                                  @Value("${stock.partitioned.max-cached-stocks:10000}") int maxCachedStocks,
+                                  @Value("${stock.partitioned.enqueue-timeout:100ms}") Duration enqueueTimeout,
+                                  @Value("${stock.partitioned.result-timeout:5s}") Duration resultTimeout) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.flushTimer = stockMetrics.flush("partitioned");
+        this.batchSize = batchSize;
+        this.maxCachedStocks = maxCachedStocks;
+        this.enqueueTimeoutNanos = enqueueTimeout.toNanos();
+        this.resultTimeout = resultTimeout;
+
+        this.partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition(i, queueCapacity);
+            partitions[i].thread.start();
+        }
+    }
+
+    /**
+     * @throws InsufficientStockException 재고가 부족할 때
+     * @throws PartitionBusyException 파티션 큐가 가득 차 있거나, result-timeout 안에 응답이 없을 때 (반영 여부는 알 수 없음)
+     * @throws IllegalStateException 파티션이 멈춘 뒤
+     */
+    public void decrease(Long id, Long quantity) throws InterruptedException {
+        submit(id, -quantity);
+    }
+
+    public void increase(Long id, Long quantity) throws InterruptedException {
+        submit(id, quantity);
+    }
+
+    public Long getQuantity(Long id) throws InterruptedException {
+        return submit(id, 0);
+    }
+
+    public int partitionOf(Long id) {
+        int hash = id.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), partitions.length);
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        for (Partition partition : partitions) {
+            partition.running = false;
+            partition.thread.interrupt();
+        }
+        for (Partition partition : partitions) {
+            partition.thread.join();
+        }
+    }
+
+    private Long submit(Long id, long delta) throws InterruptedException {
+        Partition partition = partitions[partitionOf(id)];
+        Command command = new Command(id, delta);
+        if (!partition.running) {
+            throw partition.stopped();
+        }
+        if (!partition.queue.offer(command, enqueueTimeoutNanos, TimeUnit.NANOSECONDS)) {
+            throw new PartitionBusyException(partition.index);
+        }
+        // 넣는 사이에 멈췄다면 아무도 꺼내지 않는다.
+        if (!partition.running && partition.queue.remove(command)) {
+            throw partition.stopped();
+        }
+
+        try {
+            return command.result.get(resultTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new PartitionBusyException(partition.index, resultTimeout);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private Long load(Long id) {
+        List<Long> quantities = jdbcTemplate.queryForList("select quantity from stock where id = ?", Long.class, id);
+        if (quantities.isEmpty()) {
+            throw new NoSuchElementException("stock not found: " + id);
+        }
+        return quantities.get(0);
+    }
+
+    /**
+     * 아래 필드는 파티션 쓰레드만 읽고 쓴다. (큐 제외)
+     */
+    private class Partition implements Runnable {
+
+        private final int index;
+
+        private final BlockingQueue<Command> queue;
+
+        private final Thread thread;
+
+        // 종료되거나 쓰레드가 죽으면 false. 이후의 요청은 큐에 넣지 않고 거절한다.
+        private volatile boolean running = true;
+
+        // 최근에 다룬 재고 순서. 배치를 반영한 뒤 maxCachedStocks 를 넘는 만큼 오래된 것부터 버린다.
+        private final LinkedHashMap<Long, Long> quantities = new LinkedHashMap<>(16, 0.75f, true);
+
+        private Partition(int index, int queueCapacity) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.thread = new Thread(this, "stock-partition-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<Command> batch = new ArrayList<>(batchSize);
+            try {
+                while (true) {
+                    try {
+                        batch.add(queue.take());
+                    } catch (InterruptedException e) {
+                        // 종료 전에 이미 받은 요청은 처리한다.
+                        queue.drainTo(batch);
+                        if (!batch.isEmpty()) {
+                            process(batch);
+                        }
+                        return;
+                    }
+                    queue.drainTo(batch, batchSize - 1);
+                    process(batch);
+                    batch.clear();
+                }
+            } finally {
+                // Error 로 쓰레드가 죽어도 기다리는 요청이 남지 않게 한다. (이미 응답한 요청에는 영향 없음)
+                running = false;
+                queue.drainTo(batch);
+                batch.forEach(command -> command.result.completeExceptionally(stopped()));
+            }
+        }
+
+        private IllegalStateException stopped() {
+            return new IllegalStateException("파티션이 멈춤: partition=" + index);
+        }
+
+        private void process(List<Command> batch) {
+            for (int attempt = 1; !batch.isEmpty(); attempt++) {
+                batch = apply(batch, attempt);
+            }
+            evict();
+        }
+
+        /*
+        요청을 캐시에 반영하고 재고별 증감 합계를 DB 에 쓴다.
+        @return 다른 경로의 변경과 충돌해서 다시 처리할 요청
+         */
+        private List<Command> apply(List<Command> batch, int attempt) {
+            Map<Long, Long> deltas = new LinkedHashMap<>();
+            Set<Long> reloaded = new HashSet<>();
+            List<Command> applied = new ArrayList<>(batch.size());
+            for (Command command : batch) {
+                try {
+                    Long quantity = quantities.computeIfAbsent(command.id, PartitionedStockEngine.this::load);
+                    // 다른 경로에서 늘린 재고일 수 있으므로, 이 배치에서 아직 바꾸지 않은 재고는 거절하기 전에 한 번 다시 읽는다.
+                    if (quantity + command.delta < 0 && !deltas.containsKey(command.id) && reloaded.add(command.id)) {
+                        quantity = load(command.id);
+                        quantities.put(command.id, quantity);
+                    }
+                    if (command.delta == 0) {
+                        command.value = quantity;
+                    } else {
+                        if (quantity + command.delta < 0) {
+                            throw new InsufficientStockException(quantity, -command.delta);
+                        }
+                        command.value = quantity + command.delta;
+                        quantities.put(command.id, command.value);
+                        deltas.merge(command.id, command.delta, Long::sum);
+                    }
+                    applied.add(command);
+                } catch (RuntimeException e) {
+                    command.result.completeExceptionally(e);
+                }
+            }
+
+            Set<Long> conflicts = Collections.emptySet();
+            if (!deltas.isEmpty()) {
+                try {
+                    conflicts = write(deltas);
+                } catch (RuntimeException e) {
+                    // 반영하지 못한 값은 버리고 다음 요청 때 DB 에서 다시 읽는다.
+                    deltas.keySet().forEach(quantities::remove);
+                    applied.forEach(command -> command.result.completeExceptionally(e));
+                    return Collections.emptyList();
+                }
+            }
+
+            // 충돌한 재고는 캐시를 버리고, 그 재고의 요청만 DB 에서 다시 읽은 수량으로 다시 처리한다.
+            conflicts.forEach(quantities::remove);
+            List<Command> retry = new ArrayList<>();
+            for (Command command : applied) {
+                if (!conflicts.contains(command.id)) {
+                    command.result.complete(command.value);
+                } else if (attempt < MAX_ATTEMPTS) {
+                    retry.add(command);
+                } else {
+                    command.result.completeExceptionally(
+                            new ConcurrencyFailureException("다른 경로의 변경과 계속 충돌: id=" + command.id));
+                }
+            }
+            return retry;
+        }
+
+        // @return 조건에 걸려 반영되지 않은 재고 id
+        private Set<Long> write(Map<Long, Long> deltas) {
+            List<Long> ids = new ArrayList<>(deltas.keySet());
+            List<Object[]> args = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                Long delta = deltas.get(id);
+                args.add(new Object[]{delta, id, delta});
+            }
+
+            long start = System.nanoTime();
+            int[] rows;
+            try {
+                rows = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(UPDATE_QUANTITY, args));
+            } finally {
+                flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+
+            // 드라이버가 배치를 한 문장으로 바꾸면 행 수 대신 SUCCESS_NO_INFO(-2) 를 준다. 그때는 충돌을 알 수 없다.
+            Set<Long> conflicts = new HashSet<>();
+            for (int i = 0; i < rows.length; i++) {
+                if (rows[i] == 0) {
+                    conflicts.add(ids.get(i));
+                }
+            }
+            return conflicts;
+        }
+
+        private void evict() {
+            Iterator<Map.Entry<Long, Long>> iterator = quantities.entrySet().iterator();
+            for (int excess = quantities.size() - maxCachedStocks; excess > 0; excess--) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class Command {
+
+        private final Long id;
+
+        private final long delta;
+
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+
+        // 파티션 쓰레드가 result 를 완료하기 전에 쓴다.
+        private Long value;
+
+        private Command(Long id, long delta) {
+            this.id = id;
+            this.delta = delta;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.concurrency.engine;
+
+import com.example.concurrency.domain.InsufficientStockException;
+import com.example.concurrency.repository.RedisStockRepository;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * 재고 수량을 Redis 에 두고 Lua 스크립트로 확인과 감소를 한 번에 처리한다. 요청마다 DB 왕복이 없다.
+ * <p>
+ * DB 에는 {@link RedisStockReconciler} 가 변경 기록 stream 의 증감을 읽어 모아서 더한다.
+ * Redis 에 올릴 때는 DB 수량에 아직 반영되지 않은 증감을 더하므로, DB 에서 직접 바뀐 재고(입고 등)도 Redis 에 반영된다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "stock.redis-inventory", name = "enabled", havingValue = "true")
+public class RedisStockEngine {
+
+    // 반영 노드가 DB 커밋과 반영 위치 기록 사이에 있으면 다시 읽는다. 그 사이는 Redis 명령 하나라 몇 번이면 끝난다.
+    private static final int MAX_LOAD_ATTEMPTS = 10;
+
+    private final RedisStockRepository redisStockRepository;
+
+    private final ObjectProvider<RedisStockReconciler> reconciler;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final int batchSize;
+
+    public RedisStockEngine(RedisStockRepository redisStockRepository,
+                            ObjectProvider<RedisStockReconciler> reconciler,
+                            JdbcTemplate jdbcTemplate,
+                            @Value("${stock.redis-inventory.batch-size:500}") int batchSize) {
+        this.redisStockRepository = redisStockRepository;
+        this.reconciler = reconciler;
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 시작할 때 DB 의 재고를 Redis 로 올린다. Redis 에 이미 있는 재고도 DB 수량 + 아직 반영되지 않은 증감으로 다시 맞춘다.
+     */
+    @PostConstruct
+    public void warmUp() {
+        // 반영 노드라면 이전 실행에서 남은 반영 위치를 먼저 DB 에 맞춘다.
+        reconciler.getIfAvailable();
+
+        long lastId = 0;
+        int loaded = 0;
+        while (true) {
+            long from = lastId;
+            Map<Long, Long> quantities = load(() -> {
+                Map<Long, Long> batch = new LinkedHashMap<>();
+                jdbcTemplate.query("select id, quantity from stock where id > ? order by id limit ?",
+                        (RowCallbackHandler) rs -> batch.put(rs.getLong("id"), rs.getLong("quantity")), from, batchSize);
+                return batch;
+            });
+            if (quantities.isEmpty()) {
+                break;
+            }
+            loaded += quantities.size();
+            for (Long id : quantities.keySet()) {
+                lastId = id;
+            }
+        }
+        log.info("Redis 재고 적재 {}건", loaded);
+    }
+
+    /**
+     * @throws InsufficientStockException 재고가 부족하면 Redis 의 값은 바뀌지 않는다.
+     */
+    public void decrease(Long id, Long quantity) {
+        change(id, -quantity);
+    }
+
+    public void increase(Long id, Long quantity) {
+        change(id, quantity);
+    }
+
+    public Long getQuantity(Long id) {
+        Long quantity = redisStockRepository.getQuantity(id);
+        if (quantity == null) {
+            load(id);
+            quantity = redisStockRepository.getQuantity(id);
+        }
+        return quantity;
+    }
+
+    private long change(Long id, long delta) {
+        List<Long> result = redisStockRepository.change(id, delta);
+        // 적재 이후에 추가된 재고는 처음 쓸 때 올린다.
+        if (result.get(0) == RedisStockRepository.NOT_LOADED) {
+            load(id);
+            result = redisStockRepository.change(id, delta);
+        }
+        if (result.get(0) == RedisStockRepository.INSUFFICIENT) {
+            throw new InsufficientStockException(result.get(1), -delta);
+        }
+        return result.get(1);
+    }
+
+    private void load(Long id) {
+        load(() -> {
+            List<Long> quantities = jdbcTemplate.queryForList("select quantity from stock where id = ?", Long.class, id);
+            if (quantities.isEmpty()) {
+                throw new NoSuchElementException("stock not found: " + id);
+            }
+            return Collections.singletonMap(id, quantities.get(0));
+        });
+    }
+
+    /*
+    DB 수량은 반영 위치를 읽기 전후가 같을 때만 쓴다. 그 사이에 반영이 커밋되었으면 수량과 위치가 어긋날 수 있다.
+     */
+    private Map<Long, Long> load(Supplier<Map<Long, Long>> reader) {
+        for (int attempt = 1; attempt <= MAX_LOAD_ATTEMPTS; attempt++) {
+            String applied = RedisStockReconciler.appliedRecordId(jdbcTemplate);
+            Map<Long, Long> quantities = reader.get();
+            if (quantities.isEmpty()) {
+                return quantities;
+            }
+            if (applied.equals(RedisStockReconciler.appliedRecordId(jdbcTemplate))
+                    && redisStockRepository.load(quantities, applied)) {
+                return quantities;
+            }
+        }
+        throw new IllegalStateException("Redis 재고 반영 위치가 DB 와 맞지 않습니다: " + RedisStockRepository.APPLIED_KEY);
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.concurrency.engine;
+
+import com.example.concurrency.metrics.StockMetrics;
+import com.example.concurrency.repository.RedisStockRepository;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Redis 재고 변경 기록(stream)을 읽어 DB 의 stock 테이블에 batch UPDATE 로 반영한다.
+ * <p>
+ * 기록에는 증감이 들어 있어서, 재고마다 합계를 quantity = quantity + ? 로 더한다. 다른 경로의 DB 변경은 그대로 남는다.
+ * 반영한 마지막 기록 id 를 같은 트랜잭션에 남기므로, ack 전에 죽어서 같은 기록을 다시 읽어도 두 번 더하지 않는다.
+ * 기록 순서가 섞이지 않도록 반영은 한 노드에서만 켠다. (stock.redis-inventory.reconciler)
+ */
+@Component
+@ConditionalOnProperty(prefix = "stock.redis-inventory", name = {"enabled", "reconciler"}, havingValue = "true")
+public class RedisStockReconciler {
+
+    private static final String UPDATE_QUANTITY = "update stock set quantity = quantity + ?, version = version + 1 where id = ?";
+
+    private static final String UPDATE_CHECKPOINT = "update stock_stream_checkpoint set record_id = ? where stream = ?";
+
+    private static final String INSERT_CHECKPOINT = "insert into stock_stream_checkpoint (stream, record_id) values (?, ?)";
+
+    private static final String GROUP = "stock-reconciler";
+
+    private static final Consumer CONSUMER = Consumer.from(GROUP, "reconciler");
+
+    private static final Comparator<RecordId> RECORD_ORDER = Comparator.comparingLong(RecordId::getTimestamp)
+            .thenComparingLong(RecordId::getSequence);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final RedisStockRepository redisStockRepository;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int batchSize;
+
+    private final Timer flushTimer;
+
+    // DB 에 반영한 마지막 기록 id
+    private RecordId applied;
+
+    public RedisStockReconciler(RedisTemplate<String, String> redisTemplate,
+                                RedisStockRepository redisStockRepository,
+                                JdbcTemplate jdbcTemplate,
+                                TransactionTemplate transactionTemplate,
+                                StockMetrics stockMetrics,
+                                @Value("${stock.redis-inventory.batch-size:500}") int batchSize) {
+        this.redisTemplate = redisTemplate;
+        this.redisStockRepository = redisStockRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.flushTimer = stockMetrics.flush("redis-inventory");
+    }
+
+    /**
+     * DB 에 반영한 마지막 기록 id. 아직 없으면 "0-0".
+     */
+    static String appliedRecordId(JdbcTemplate jdbcTemplate) {
+        List<String> recordIds = jdbcTemplate.queryForList(
+                "select record_id from stock_stream_checkpoint where stream = ?", String.class,
+                RedisStockRepository.CHANGE_STREAM);
+        return recordIds.isEmpty() ? "0-0" : recordIds.get(0);
+    }
+
+    /**
+     * 소비 그룹을 만들고, 반영 위치를 DB 에 맞춘다. (DB 반영을 커밋하고 Redis 에 남기기 전에 죽은 경우)
+     */
+    @PostConstruct
+    public void start() {
+        try {
+            redisTemplate.opsForStream().createGroup(RedisStockRepository.CHANGE_STREAM, ReadOffset.from("0"), GROUP);
+        } catch (RedisSystemException e) {
+            // 이미 만들어진 그룹 (BUSYGROUP)
+        }
+        applied = RecordId.of(appliedRecordId(jdbcTemplate));
+        redisStockRepository.markApplied(applied.getValue());
+    }
+
+    /**
+     * 이전에 읽고 ack 하지 못한 기록부터 반영한 뒤, 새 기록을 반영한다.
+     * @return 반영한 기록 수
+     */
+    @Scheduled(fixedDelayString = "${stock.redis-inventory.reconcile-interval-millis:100}")
+    public synchronized int reconcile() {
+        return drain(ReadOffset.from("0")) + drain(ReadOffset.lastConsumed());
+    }
+
+    // read 는 제네릭 가변 인자라 호출하는 곳에서 unchecked 경고가 난다. 넘기는 배열은 read 안에서만 쓰인다.
+    @SuppressWarnings("unchecked")
+    private int drain(ReadOffset offset) {
+        int reconciled = 0;
+        while (true) {
+            List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream().read(CONSUMER,
+                    StreamReadOptions.empty().count(batchSize),
+                    StreamOffset.create(RedisStockRepository.CHANGE_STREAM, offset));
+            if (records == null || records.isEmpty()) {
+                return reconciled;
+            }
+
+            reconciled += write(records);
+        }
+    }
+
+    private int write(List<MapRecord<String, Object, Object>> records) {
+        Map<Long, Long> deltas = new LinkedHashMap<>();
+        RecordId[] ids = new RecordId[records.size()];
+        RecordId last = applied;
+        int count = 0;
+        for (int i = 0; i < records.size(); i++) {
+            MapRecord<String, Object, Object> record = records.get(i);
+            ids[i] = record.getId();
+            // 이전 실행에서 DB 에 반영하고 ack 하기 전에 죽은 기록
+            if (RECORD_ORDER.compare(record.getId(), applied) <= 0) {
+                continue;
+            }
+            deltas.merge(Long.valueOf((String) record.getValue().get("id")),
+                    Long.valueOf((String) record.getValue().get("delta")), Long::sum);
+            last = record.getId();
+            count++;
+        }
+
+        if (!deltas.isEmpty()) {
+            List<Object[]> args = new ArrayList<>(deltas.size());
+            deltas.forEach((id, delta) -> args.add(new Object[]{delta, id}));
+            String recordId = last.getValue();
+
+            long start = System.nanoTime();
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    jdbcTemplate.batchUpdate(UPDATE_QUANTITY, args);
+                    if (jdbcTemplate.update(UPDATE_CHECKPOINT, recordId, RedisStockRepository.CHANGE_STREAM) == 0) {
+                        jdbcTemplate.update(INSERT_CHECKPOINT, RedisStockRepository.CHANGE_STREAM, recordId);
+                    }
+                });
+            } finally {
+                flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            applied = last;
+            // 기록을 지우기 전에 반영 위치를 먼저 바꾼다. 적재 중인 노드는 위치가 바뀐 것을 보고 DB 를 다시 읽는다.
+            redisStockRepository.markApplied(recordId);
+        }
+
+        redisTemplate.opsForStream().acknowledge(RedisStockRepository.CHANGE_STREAM, GROUP, ids);
+        redisTemplate.opsForStream().delete(RedisStockRepository.CHANGE_STREAM, ids);
+        return count;
+    }
+}
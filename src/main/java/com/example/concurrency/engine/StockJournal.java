@@ -0,0 +1,272 @@
+package com.example.concurrency.engine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * write-behind 엔진의 재고 변경 저널.
+ * 레코드는 (재고 id, 증감) 고정 길이이고, 응답 전에 디스크에 기록된다.
+ * <p>
+ * 기록은 group commit 으로 한다. 동시에 들어온 레코드는 큐에 모이고, 먼저 온 쓰레드 하나가 모인 레코드를 한 번에 쓰고
+ * fsync 한 번 뒤에 모두를 깨운다. 그래서 fsync 횟수는 요청 수가 아니라 배치 수만큼이다.
+ * <p>
+ * 파일은 세그먼트 단위로 나뉜다. flush 직전에 {@link #rotate()} 로 현재 세그먼트를 봉인하고,
+ * 봉인된 세그먼트의 증감 합계({@link #getSealedDeltas()})를 DB 에 반영한 뒤 {@link #deleteSealed()} 로 지운다.
+ * 증감은 여러 번 반영하면 결과가 달라지므로, DB 에 반영한 마지막 세그먼트 번호를 같은 트랜잭션에 남기고 재생할 때 건너뛴다.
+ */
+public class StockJournal implements AutoCloseable {
+
+    private static final String PREFIX = "stock-journal-";
+    private static final String SUFFIX = ".log";
+    private static final int RECORD_SIZE = Long.BYTES * 2;
+
+    private final Path directory;
+
+    private final boolean fsync;
+
+    private final List<Path> sealed = new ArrayList<>();
+
+    // 봉인된 세그먼트의 재고별 증감 합계. DB 에 반영하고 지울 때까지 남는다.
+    private final Map<Long, Long> sealedDeltas = new HashMap<>();
+
+    private long lastSealedSegmentNo;
+
+    // 현재 세그먼트의 재고별 증감 합계. fsync 가 끝난 레코드만 더한다.
+    private Map<Long, Long> currentDeltas = new HashMap<>();
+
+    private List<Record> queue = new ArrayList<>();
+
+    private boolean writing;
+
+    // 쓰기나 fsync 에 실패하면 디스크에 무엇이 남았는지 알 수 없으므로 더 기록하지 않는다.
+    private IOException failure;
+
+    private FileChannel channel;
+
+    private Path current;
+
+    private long segmentNo;
+
+    public StockJournal(Path directory, boolean fsync) {
+        this.directory = directory;
+        this.fsync = fsync;
+        try {
+            Files.createDirectories(directory);
+            for (Path segment : segments()) {
+                segmentNo = Math.max(segmentNo, segmentNo(segment));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 이전 실행에서 남은 세그먼트를 봉인된 세그먼트로 읽는다. appliedSegmentNo 까지는 DB 에 이미 반영된 세그먼트라 증감을 더하지 않는다.
+     */
+    public synchronized void recover(long appliedSegmentNo) {
+        segmentNo = Math.max(segmentNo, appliedSegmentNo);
+        lastSealedSegmentNo = Math.max(lastSealedSegmentNo, appliedSegmentNo);
+        try {
+            for (Path segment : segments()) {
+                long no = segmentNo(segment);
+                if (no > appliedSegmentNo) {
+                    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+                    // 기록 중에 중단된 마지막 레코드는 응답하지 않은 변경이므로 버린다.
+                    while (buffer.remaining() >= RECORD_SIZE) {
+                        sealedDeltas.merge(buffer.getLong(), buffer.getLong(), Long::sum);
+                    }
+                    lastSealedSegmentNo = Math.max(lastSealedSegmentNo, no);
+                }
+                sealed.add(segment);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 레코드가 디스크에 기록될 때까지 기다린다.
+     */
+    public void append(long id, long delta) {
+        Record record = new Record(id, delta);
+        List<Record> batch;
+        boolean interrupted = false;
+        synchronized (this) {
+            queue.add(record);
+            while (writing && !record.done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // 기록 여부를 알기 전에 돌아가면 응답과 저널이 어긋나므로 끝까지 기다린다.
+                    interrupted = true;
+                }
+            }
+            if (!record.done) {
+                writing = true;
+                batch = queue;
+                queue = new ArrayList<>();
+            } else {
+                batch = null;
+            }
+        }
+
+        if (batch != null) {
+            IOException error = write(batch);
+            synchronized (this) {
+                if (error == null) {
+                    batch.forEach(written -> currentDeltas.merge(written.id, written.delta, Long::sum));
+                } else {
+                    failure = error;
+                }
+                batch.forEach(written -> {
+                    written.failure = error;
+                    written.done = true;
+                });
+                writing = false;
+                notifyAll();
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (record.failure != null) {
+            throw new UncheckedIOException(record.failure);
+        }
+    }
+
+    /**
+     * 현재 세그먼트를 봉인한다. 이후 append 는 새 세그먼트에 기록된다.
+     */
+    public synchronized void rotate() {
+        awaitWriter();
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        sealed.add(current);
+        lastSealedSegmentNo = segmentNo;
+        currentDeltas.forEach((id, delta) -> sealedDeltas.merge(id, delta, Long::sum));
+        currentDeltas = new HashMap<>();
+        channel = null;
+        current = null;
+    }
+
+    public synchronized Map<Long, Long> getSealedDeltas() {
+        return new HashMap<>(sealedDeltas);
+    }
+
+    /**
+     * @return 봉인된 세그먼트 중 가장 큰 번호. 증감을 DB 에 반영할 때 같은 트랜잭션에 남긴다.
+     */
+    public synchronized long getLastSealedSegmentNo() {
+        return lastSealedSegmentNo;
+    }
+
+    public synchronized void deleteSealed() {
+        try {
+            for (Path segment : sealed) {
+                Files.deleteIfExists(segment);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        sealed.clear();
+        sealedDeltas.clear();
+    }
+
+    @Override
+    public synchronized void close() {
+        rotate();
+    }
+
+    // 쓰기는 모니터 밖에서 하므로, 채널을 바꾸기 전에 진행 중인 배치가 끝나기를 기다린다.
+    private void awaitWriter() {
+        boolean interrupted = false;
+        while (writing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private IOException write(List<Record> batch) {
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            if (channel == null) {
+                open();
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * batch.size());
+            for (Record record : batch) {
+                buffer.putLong(record.id).putLong(record.delta);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+            return null;
+        } catch (IOException e) {
+            return e;
+        }
+    }
+
+    private void open() throws IOException {
+        current = directory.resolve(PREFIX + (++segmentNo) + SUFFIX);
+        channel = FileChannel.open(current, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        segments.sort((a, b) -> Long.compare(segmentNo(a), segmentNo(b)));
+        return segments;
+    }
+
+    private static long segmentNo(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static class Record {
+
+        private final long id;
+
+        private final long delta;
+
+        // 모니터 안에서 바뀐다. 기다리는 쪽은 done 을 모니터 안에서 본 뒤에 failure 를 읽는다.
+        private boolean done;
+
+        private IOException failure;
+
+        private Record(long id, long delta) {
+            this.id = id;
+            this.delta = delta;
+        }
+    }
+}
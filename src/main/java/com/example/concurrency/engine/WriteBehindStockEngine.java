@@ -0,0 +1,271 @@
+package com.example.concurrency.engine;
+
+import com.example.concurrency.domain.InsufficientStockException;
+import com.example.concurrency.domain.StockChangedEvent;
+import com.example.concurrency.metrics.StockMetrics;
+import io.micrometer.core.instrument.Timer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 메모리의 재고 카운터를 기준으로 감소/증가를 처리하고, 변경된 재고의 증감만 주기적으로 DB 에 모아서 반영한다.
+ * <p>
+ * 감소는 CAS 로 처리되며 {@link com.example.concurrency.domain.Stock#decrease(Long)} 와 같이 음수가 되지 않는다.
+ * 응답 전에 {@link StockJournal} 에 기록하므로, DB 에 반영되기 전에 프로세스가 죽어도 다음 시작 때 복구된다.
+ * <p>
+ * DB 에는 수량이 아니라 증감(quantity = quantity + ?)만 쓰므로 다른 경로(HTTP 증가, 대량 입고, 예약 등)의 변경을 덮어쓰지 않는다.
+ * 다른 경로의 변경은 {@link StockChangedEvent} 로 알게 되고, 다음 flush 때 DB 에서 읽어 카운터에 더한다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "stock.write-behind", name = "enabled", havingValue = "true")
+public class WriteBehindStockEngine {
+
+    private static final String UPDATE_QUANTITY = "update stock set quantity = quantity + ?, version = version + 1 "
+            + "where id = ? and quantity + ? >= 0";
+
+    // 이미 응답한 감소라서 조건에 걸려도 반영은 해야 한다. (다른 경로와 겹쳐 초과 판매된 경우)
+    private static final String FORCE_QUANTITY = "update stock set quantity = quantity + ?, version = version + 1 where id = ?";
+
+    private static final String UPDATE_CHECKPOINT = "update stock_journal_checkpoint set segment_no = ? where journal = ?";
+
+    private static final String INSERT_CHECKPOINT = "insert into stock_journal_checkpoint (journal, segment_no) values (?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final StockJournal journal;
+
+    private final String journalName;
+
+    private final int batchSize;
+
+    private final Timer flushTimer;
+
+    private final ConcurrentHashMap<Long, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    // 재고별로 이 엔진이 아는 DB 수량 (읽어 들인 값 + 반영한 증감). 실제 DB 수량과의 차이가 다른 경로의 변경이다.
+    private final ConcurrentHashMap<Long, Long> known = new ConcurrentHashMap<>();
+
+    // 다른 경로에서 바뀐 재고. 다음 flush 때 DB 에서 다시 읽는다.
+    private final Set<Long> changed = ConcurrentHashMap.newKeySet();
+
+    public WriteBehindStockEngine(JdbcTemplate jdbcTemplate,
+                                  TransactionTemplate transactionTemplate,
+                                  StockMetrics stockMetrics,
+                                  @Value("${stock.write-behind.journal-dir:./stock-journal}") Path journalDir,
+                                  @Value("${stock.write-behind.journal-fsync:true}") boolean fsync,
+                                  @Value("${stock.write-behind.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.journal = new StockJournal(journalDir, fsync);
+        this.journalName = journalDir.toAbsolutePath().normalize().toString();
+        this.batchSize = batchSize;
+        this.flushTimer = stockMetrics.flush("write-behind");
+    }
+
+    /**
+     * 이전 실행에서 DB 에 반영되지 못한 변경을 저널에서 읽어 반영한다.
+     */
+    @PostConstruct
+    public void recover() {
+        List<Long> applied = jdbcTemplate.queryForList(
+                "select segment_no from stock_journal_checkpoint where journal = ?", Long.class, journalName);
+        journal.recover(applied.isEmpty() ? 0 : applied.get(0));
+
+        Map<Long, Long> deltas = journal.getSealedDeltas();
+        if (!deltas.isEmpty()) {
+            write(deltas, journal.getLastSealedSegmentNo());
+            log.info("저널에서 재고 {}건 복구", deltas.size());
+        }
+        journal.deleteSealed();
+    }
+
+    public void decrease(Long id, Long quantity) {
+        apply(id, -quantity);
+    }
+
+    public void increase(Long id, Long quantity) {
+        apply(id, quantity);
+    }
+
+    public Long getQuantity(Long id) {
+        return counter(id).get();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockChanged(StockChangedEvent event) {
+        if (counters.containsKey(event.getStockId())) {
+            changed.add(event.getStockId());
+        }
+    }
+
+    /**
+     * 봉인한 세그먼트의 증감을 batch UPDATE 로 반영하고, 다른 경로에서 바뀐 재고를 카운터에 맞춘다.
+     * 세그먼트를 먼저 봉인하므로, 봉인된 세그먼트의 모든 변경이 이번 flush 에 포함되고 그 뒤의 변경은 포함되지 않는다.
+     */
+    @Scheduled(fixedDelayString = "${stock.write-behind.flush-interval-millis:100}")
+    public synchronized void flush() {
+        journal.rotate();
+
+        Map<Long, Long> deltas = journal.getSealedDeltas();
+        if (!deltas.isEmpty()) {
+            // 실패하면 봉인된 세그먼트와 증감을 남겨 두고 다음 flush 에서 다시 시도한다.
+            write(deltas, journal.getLastSealedSegmentNo());
+        } else if (!changed.isEmpty()) {
+            sync(Collections.emptyMap());
+        }
+        journal.deleteSealed();
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+        journal.close();
+    }
+
+    private AtomicLong counter(Long id) {
+        return counters.computeIfAbsent(id, this::load);
+    }
+
+    private AtomicLong load(Long id) {
+        List<Long> quantities = jdbcTemplate.queryForList("select quantity from stock where id = ?", Long.class, id);
+        if (quantities.isEmpty()) {
+            throw new NoSuchElementException("stock not found: " + id);
+        }
+        known.put(id, quantities.get(0));
+        return new AtomicLong(quantities.get(0));
+    }
+
+    /*
+    증가는 실패할 일이 없으므로 저널에 먼저 남기고 카운터에 더한다.
+    감소는 카운터에서 먼저 빼서 수량을 잡아 둔 뒤 저널에 남긴다. 저널에 실패하면 잡아 둔 수량을 더해서 돌려놓는다.
+    더하기는 음수가 될 일이 없고, 그 사이 다른 요청은 실제보다 적은 수량을 봤을 뿐이라 초과 판매는 생기지 않는다.
+     */
+    private void apply(Long id, long delta) {
+        AtomicLong counter = counter(id);
+        if (delta >= 0) {
+            journal.append(id, delta);
+            counter.addAndGet(delta);
+            return;
+        }
+
+        long current;
+        do {
+            current = counter.get();
+            if (current + delta < 0) {
+                throw new InsufficientStockException(current, -delta);
+            }
+        } while (!counter.compareAndSet(current, current + delta));
+
+        try {
+            journal.append(id, delta);
+        } catch (RuntimeException e) {
+            counter.addAndGet(-delta);
+            throw e;
+        }
+    }
+
+    private void write(Map<Long, Long> deltas, long segmentNo) {
+        long start = System.nanoTime();
+        try {
+            sync(deltas, segmentNo);
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void sync(Map<Long, Long> deltas) {
+        sync(deltas, -1);
+    }
+
+    /*
+    증감 반영, 반영한 세그먼트 번호, 반영 뒤의 DB 수량 읽기를 한 트랜잭션에서 한다.
+    증감을 쓴 행은 커밋까지 잠겨 있으므로, 읽은 수량과 이 엔진이 아는 수량의 차이는 모두 다른 경로의 변경이다.
+     */
+    private void sync(Map<Long, Long> deltas, long segmentNo) {
+        Set<Long> reread = new HashSet<>(changed);
+        changed.removeAll(reread);
+        List<Long> ids = new ArrayList<>(deltas.keySet());
+
+        Map<Long, Long> quantities;
+        try {
+            quantities = transactionTemplate.execute(status -> {
+                for (int from = 0; from < ids.size(); from += batchSize) {
+                    update(ids.subList(from, Math.min(from + batchSize, ids.size())), deltas);
+                }
+                if (segmentNo >= 0 && jdbcTemplate.update(UPDATE_CHECKPOINT, segmentNo, journalName) == 0) {
+                    jdbcTemplate.update(INSERT_CHECKPOINT, journalName, segmentNo);
+                }
+
+                reread.addAll(ids);
+                reread.retainAll(counters.keySet());
+                return read(reread);
+            });
+        } catch (RuntimeException e) {
+            changed.addAll(reread);
+            throw e;
+        }
+
+        quantities.forEach((id, quantity) -> {
+            long expected = known.getOrDefault(id, quantity) + deltas.getOrDefault(id, 0L);
+            if (quantity != expected) {
+                counters.get(id).addAndGet(quantity - expected);
+            }
+            known.put(id, quantity);
+        });
+    }
+
+    private void update(List<Long> ids, Map<Long, Long> deltas) {
+        List<Object[]> args = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Long delta = deltas.get(id);
+            args.add(new Object[]{delta, id, delta});
+        }
+        int[] rows = jdbcTemplate.batchUpdate(UPDATE_QUANTITY, args);
+
+        // 드라이버가 배치를 한 문장으로 바꾸면 행 수 대신 SUCCESS_NO_INFO(-2) 를 준다. 그때는 충돌을 알 수 없다.
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i] == 0) {
+                Long id = ids.get(i);
+                log.warn("다른 경로의 감소와 겹쳐 초과 판매된 재고를 반영합니다. id={}, delta={}", id, deltas.get(id));
+                jdbcTemplate.update(FORCE_QUANTITY, deltas.get(id), id);
+            }
+        }
+    }
+
+    private Map<Long, Long> read(Set<Long> ids) {
+        Map<Long, Long> quantities = new HashMap<>();
+        List<Long> list = new ArrayList<>(ids);
+        for (int from = 0; from < list.size(); from += batchSize) {
+            List<Long> chunk = list.subList(from, Math.min(from + batchSize, list.size()));
+            String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+            jdbcTemplate.query("select id, quantity from stock where id in (" + placeholders + ")",
+                    rs -> {
+                        quantities.put(rs.getLong(1), rs.getLong(2));
+                    }, chunk.toArray());
+        }
+        return quantities;
+    }
+}
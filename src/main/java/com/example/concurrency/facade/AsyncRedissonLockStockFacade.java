@@ -0,0 +1,115 @@
+package com.example.concurrency.facade;
+
+import com.example.concurrency.lock.LockAcquisitionTimeoutException;
+import com.example.concurrency.lock.RedissonFence;
+import com.example.concurrency.metrics.StockLockMeters;
+import com.example.concurrency.metrics.StockMetrics;
+import com.example.concurrency.service.StockService;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Redisson 비동기 락을 쓰는 재고 감소.
+ * 락을 기다리는 동안에는 어떤 쓰레드도 잡고 있지 않고, 락을 얻은 뒤의 DB 작업만 커넥션 풀 크기의 쓰레드에서 실행한다.
+ * <p>
+ * leaseTime 을 주지 않으므로 DB 작업이 큐에서 기다리는 동안에도 Redisson watchdog 이 lease 를 갱신한다.
+ * 그래도 lease 를 잃었을 때를 대비해 DB 쓰기는 펜싱 토큰으로 조건을 건다. ({@link RedissonFence})
+ * DB 작업 큐가 가득 차면 락을 풀고 RejectedExecutionException 으로 끝난다.
+ */
+@Slf4j
+@Component
+public class AsyncRedissonLockStockFacade {
+
+    // Redisson 에서 leaseTime 이 -1 이면 watchdog 이 lease 를 갱신한다.
+    private static final long WATCHDOG_LEASE = -1;
+
+    private final RedissonClient redissonClient;
+
+    private final RedissonFence redissonFence;
+
+    private final StockService stockService;
+
+    private final long maxWaitMillis;
+
+    private final ExecutorService databaseExecutor;
+
+    private final StockLockMeters meters;
+
+    // 락 소유자 구분용. 호출한 쓰레드가 아니라 요청마다 소유자가 달라야 한다.
+    private final AtomicLong ownerIds = new AtomicLong();
+
+    public AsyncRedissonLockStockFacade(RedissonClient redissonClient,
+                                        RedissonFence redissonFence,
+                                        StockService stockService,
+                                        StockMetrics stockMetrics,
+                                        @Value("${stock.async-lock.max-wait:5s}") Duration maxWait,
+                                        @Value("${stock.async-lock.database-threads:10}") int databaseThreads,
+                                        @Value("${stock.async-lock.queue-capacity:1000}") int queueCapacity) {
+        this.redissonClient = redissonClient;
+        this.redissonFence = redissonFence;
+        this.stockService = stockService;
+        this.maxWaitMillis = maxWait.toMillis();
+        this.databaseExecutor = new ThreadPoolExecutor(databaseThreads, databaseThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity));
+        this.meters = stockMetrics.lock("redisson-async");
+    }
+
+    public CompletableFuture<Void> decrease(Long key, Long quantity) {
+        RLock lock = redissonClient.getLock(key.toString());
+        long ownerId = ownerIds.incrementAndGet();
+        long start = System.nanoTime();
+
+        return lock.tryLockAsync(maxWaitMillis, WATCHDOG_LEASE, TimeUnit.MILLISECONDS, ownerId)
+                .toCompletableFuture()
+                .thenCompose(acquired -> {
+                    if (!acquired) {
+                        meters.recordTimeout(key);
+                        return CompletableFuture.failedFuture(new LockAcquisitionTimeoutException(key));
+                    }
+                    meters.recordWait(key, System.nanoTime() - start);
+                    return decreaseAndUnlock(lock, ownerId, key, quantity);
+                });
+    }
+
+    @PreDestroy
+    public void close() {
+        databaseExecutor.shutdown();
+    }
+
+    /*
+    감소가 실패해도 락은 반드시 풀고, 호출한 쪽에는 감소 결과(예외 포함)를 그대로 돌려준다.
+    락을 이미 잃어 해제가 실패해도 감소는 커밋되었을 수 있으므로 호출한 쪽을 실패시키지 않는다.
+     */
+    private CompletableFuture<Void> decreaseAndUnlock(RLock lock, long ownerId, Long key, Long quantity) {
+        long acquired = System.nanoTime();
+        CompletableFuture<Void> decrease = redissonFence.issueAsync(lock, ownerId, key)
+                .thenAcceptAsync(fenceToken -> stockService.decreaseWithFence(key, quantity, fenceToken), databaseExecutor);
+
+        return decrease
+                .handle((ignored, e) -> {
+                    long released = System.nanoTime();
+                    meters.recordHold(key, released - acquired);
+                    return lock.unlockAsync(ownerId).toCompletableFuture()
+                            .handle((unlocked, error) -> {
+                                meters.recordRelease(key, System.nanoTime() - released);
+                                if (error != null) {
+                                    log.warn("락 해제 실패: key={}", key, error);
+                                }
+                                return null;
+                            });
+                })
+                .thenCompose(unlock -> unlock)
+                .thenCompose(unlocked -> decrease);
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.concurrency.facade;
+
+import com.example.concurrency.domain.InsufficientStockException;
+import com.example.concurrency.metrics.StockMetrics;
+import com.example.concurrency.service.StockService;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 같은 재고에 대한 감소 요청을 모아서 한 번에 처리한다. (group commit)
+ * <p>
+ * 요청은 재고 id 별 큐에 쌓이고, 먼저 리더가 된 쓰레드가 큐에 쌓인 요청을 꺼내
+ * {@link StockService#decreaseInOrder} 트랜잭션 하나로 처리한다.
+ * N 번의 락 획득과 커밋이 배치당 한 번으로 줄고, 요청별 결과는 도착 순서대로 정해진다.
+ */
+@Component
+public class CoalescingStockFacade {
+
+    private final StockService stockService;
+
+    private final int maxBatchSize;
+
+    private final Timer flushTimer;
+
+    private final ConcurrentHashMap<Long, Combiner> combiners = new ConcurrentHashMap<>();
+
+    public CoalescingStockFacade(StockService stockService,
+                                 StockMetrics stockMetrics,
+                                 @Value("${stock.coalescing.max-batch-size:200}") int maxBatchSize) {
+        this.stockService = stockService;
+        this.maxBatchSize = maxBatchSize;
+        this.flushTimer = stockMetrics.flush("coalescing");
+    }
+
+    /**
+     * @throws InsufficientStockException 이 요청 차례에 재고가 부족했을 때
+     */
+    public void decrease(Long id, Long quantity) {
+        DecreaseRequest request = new DecreaseRequest(quantity);
+        Combiner combiner = combiners.computeIfAbsent(id, Combiner::new);
+        combiner.queue.add(request);
+
+        combine(combiner);
+
+        try {
+            if (!request.result.join()) {
+                throw new InsufficientStockException(quantity);
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /*
+    큐에 요청을 넣은 뒤 리더가 되기를 시도한다. 실패하면 현재 리더가 내 요청까지 처리한다.
+    리더는 락을 놓은 뒤에도 큐가 비어있지 않으면 다시 시도하므로, 큐에 남겨진 요청은 없다.
+     */
+    private void combine(Combiner combiner) {
+        while (!combiner.queue.isEmpty() && combiner.running.compareAndSet(false, true)) {
+            try {
+                List<DecreaseRequest> batch = new ArrayList<>();
+                DecreaseRequest request;
+                while (batch.size() < maxBatchSize && (request = combiner.queue.poll()) != null) {
+                    batch.add(request);
+                }
+                if (!batch.isEmpty()) {
+                    apply(combiner.id, batch);
+                }
+            } finally {
+                combiner.running.set(false);
+            }
+        }
+
+        // 처리할 요청이 없는 재고는 맵에서 제거한다. 제거된 combiner 에 들어온 요청은 그 요청의 쓰레드가 처리한다.
+        if (combiner.queue.isEmpty()) {
+            combiners.remove(combiner.id, combiner);
+        }
+    }
+
+    private void apply(Long id, List<DecreaseRequest> batch) {
+        List<Long> quantities = new ArrayList<>(batch.size());
+        for (DecreaseRequest request : batch) {
+            quantities.add(request.quantity);
+        }
+
+        boolean[] results;
+        long start = System.nanoTime();
+        try {
+            results = stockService.decreaseInOrder(id, quantities);
+        } catch (RuntimeException e) {
+            for (DecreaseRequest request : batch) {
+                request.result.completeExceptionally(e);
+            }
+            return;
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result.complete(results[i]);
+        }
+    }
+
+    private static class Combiner {
+
+        private final Long id;
+
+        private final Queue<DecreaseRequest> queue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        private Combiner(Long id) {
+            this.id = id;
+        }
+    }
+
+    private static class DecreaseRequest {
+
+        private final Long quantity;
+
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private DecreaseRequest(Long quantity) {
+            this.quantity = quantity;
+        }
+    }
+}
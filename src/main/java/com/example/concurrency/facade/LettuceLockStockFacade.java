@@ -1,7 +1,17 @@
 package com.example.concurrency.facade;
 
+import com.example.concurrency.lock.LeaseWatchdog;
+import com.example.concurrency.lock.LockAcquisitionTimeoutException;
+import com.example.concurrency.lock.LockWaitStatistics;
+import com.example.concurrency.lock.RedisLockNotifier;
+import com.example.concurrency.metrics.StockLockMeters;
+import com.example.concurrency.metrics.StockMetrics;
 import com.example.concurrency.repository.RedisLockRepository;
 import com.example.concurrency.service.StockService;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -9,23 +19,98 @@ public class LettuceLockStockFacade {
 
     private RedisLockRepository redisLockRepository;
 
+    private RedisLockNotifier redisLockNotifier;
+
+    private LeaseWatchdog leaseWatchdog;
+
     private StockService stockService;
 
+    private final long baseBackoffMillis;
+
+    private final long maxBackoffMillis;
+
+    private final long maxWaitMillis;
+
+    private final LockWaitStatistics statistics = new LockWaitStatistics();
+
+    private final StockLockMeters meters;
+
     public LettuceLockStockFacade(RedisLockRepository redisLockRepository,
-        StockService stockService) {
+        RedisLockNotifier redisLockNotifier,
+        LeaseWatchdog leaseWatchdog,
+        StockService stockService,
+        StockMetrics stockMetrics,
+        @Value("${stock.lettuce-lock.base-backoff:5ms}") Duration baseBackoff,
+        @Value("${stock.lettuce-lock.max-backoff:1s}") Duration maxBackoff,
+        @Value("${stock.lettuce-lock.max-wait:10s}") Duration maxWait) {
         this.redisLockRepository = redisLockRepository;
+        this.redisLockNotifier = redisLockNotifier;
+        this.leaseWatchdog = leaseWatchdog;
         this.stockService = stockService;
+        this.baseBackoffMillis = baseBackoff.toMillis();
+        this.maxBackoffMillis = maxBackoff.toMillis();
+        this.maxWaitMillis = maxWait.toMillis();
+        this.meters = stockMetrics.lock("lettuce");
     }
 
+    /**
+     * 락을 잡는 동안 lease 를 갱신하고, DB 쓰기는 락과 함께 받은 펜싱 토큰으로 조건을 건다.
+     * @throws LockAcquisitionTimeoutException 락을 잡지 못했거나, 쓰기 전에 lease 가 끝났을 때
+     */
     public void decrease(Long key, Long quantity) throws InterruptedException {
-        while (!redisLockRepository.lock(key)) {
-            Thread.sleep(100);
-        }
+        String token = UUID.randomUUID().toString();
+        long fenceToken = lock(key, token);
 
-        try {
-            stockService.decrease(key, quantity);
+        long acquired = System.nanoTime();
+        try (LeaseWatchdog.Lease lease = leaseWatchdog.watch(redisLockRepository.getTtl(), acquired,
+                () -> redisLockRepository.renew(key, token))) {
+            // 락을 잡은 뒤(GC 등으로) lease 가 지나도록 멈췄으면 다른 쪽이 락을 잡았을 수 있으니 쓰지 않는다.
+            // 확인 뒤에 잃는 경우는 펜싱 토큰이 막는다.
+            if (lease.isExpired()) {
+                throw new LockAcquisitionTimeoutException(key);
+            }
+            stockService.decreaseWithFence(key, quantity, fenceToken);
         } finally {
-            redisLockRepository.unlock(key);
+            long released = System.nanoTime();
+            meters.recordHold(key, released - acquired);
+            redisLockRepository.unlock(key, token);
+            meters.recordRelease(key, System.nanoTime() - released);
+        }
+    }
+
+    public LockWaitStatistics getStatistics() {
+        return statistics;
+    }
+
+    /*
+    락을 놓치면 해제 알림(pub/sub)을 기다린다. 알림을 놓치는 경우를 대비해 지수 백오프(+jitter) 만큼만 기다리고 다시 시도한다.
+     */
+    private long lock(Long key, String token) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + maxWaitMillis * 1_000_000;
+        int attempt = 1;
+
+        Long fenceToken;
+        while ((fenceToken = redisLockRepository.lockWithFence(key, token)) == null) {
+            long remainingMillis = (deadline - System.nanoTime()) / 1_000_000;
+            if (remainingMillis <= 0) {
+                statistics.recordTimeout(attempt);
+                meters.recordTimeout(key);
+                throw new LockAcquisitionTimeoutException(key);
+            }
+
+            redisLockNotifier.await(redisLockRepository.generateKey(key), Math.min(backoff(attempt), remainingMillis));
+            attempt++;
         }
+
+        long waitNanos = System.nanoTime() - start;
+        statistics.recordAcquired(attempt, waitNanos);
+        meters.recordWait(key, waitNanos);
+        return fenceToken;
+    }
+
+    private long backoff(int attempt) {
+        long backoff = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
     }
 }
@@ -1,29 +1,23 @@
 package com.example.concurrency.facade;
 
-import com.example.concurrency.repository.LockRepository;
+import com.example.concurrency.lock.NamedLockManager;
 import com.example.concurrency.service.StockService;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
 @Component
 public class NamedLockStockFacade {
 
-    private final LockRepository lockRepository;
+    private final NamedLockManager namedLockManager;
 
     private final StockService stockService;
 
-    public NamedLockStockFacade(LockRepository lockRepository, StockService stockService) {
-        this.lockRepository = lockRepository;
+    public NamedLockStockFacade(NamedLockManager namedLockManager, StockService stockService) {
+        this.namedLockManager = namedLockManager;
         this.stockService = stockService;
     }
 
-    @Transactional
+    // 락은 전용 풀의 커넥션에서 잡고, 감소는 업무용 풀의 커넥션 하나로만 처리한다.
     public void decrease(Long id, Long quantity) {
-        try {
-            lockRepository.getLock(id.toString());
-            stockService.decrease(id, quantity);
-        } finally {
-            lockRepository.releaseLock(id.toString());
-        }
+        namedLockManager.executeWithLock(id.toString(), () -> stockService.decrease(id, quantity));
     }
 }
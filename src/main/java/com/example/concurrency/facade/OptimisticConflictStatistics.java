@@ -0,0 +1,64 @@
+package com.example.concurrency.facade;
+
+/**
+ * 재고 id 하나의 낙관적 락 충돌 통계.
+ * 충돌률은 최근 시도에 가중치를 두는 지수 이동 평균(EWMA)이다.
+ */
+public class OptimisticConflictStatistics {
+
+    private static final double ALPHA = 0.1;
+
+    private long attempts;
+
+    private long conflicts;
+
+    private long retries;
+
+    private long pessimisticFallbacks;
+
+    private double conflictRate;
+
+    synchronized void recordSuccess() {
+        attempts++;
+        conflictRate = conflictRate * (1 - ALPHA);
+    }
+
+    synchronized void recordConflict() {
+        attempts++;
+        conflicts++;
+        conflictRate = conflictRate * (1 - ALPHA) + ALPHA;
+    }
+
+    synchronized void recordRetry() {
+        retries++;
+    }
+
+    /*
+    비관적 락으로 처리하는 동안에는 충돌이 없으므로 충돌률이 조금씩 내려가고,
+    임계값 아래로 내려오면 다시 낙관적 락을 시도한다.
+     */
+    synchronized void recordPessimisticFallback() {
+        pessimisticFallbacks++;
+        conflictRate = conflictRate * (1 - ALPHA);
+    }
+
+    public synchronized long getAttempts() {
+        return attempts;
+    }
+
+    public synchronized long getConflicts() {
+        return conflicts;
+    }
+
+    public synchronized long getRetries() {
+        return retries;
+    }
+
+    public synchronized long getPessimisticFallbacks() {
+        return pessimisticFallbacks;
+    }
+
+    public synchronized double getConflictRate() {
+        return conflictRate;
+    }
+}
@@ -1,6 +1,14 @@
 package com.example.concurrency.facade;
 
+import com.example.concurrency.metrics.StockLockMeters;
+import com.example.concurrency.metrics.StockMetrics;
 import com.example.concurrency.service.StockService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -8,18 +16,74 @@ public class OptimisticLockStockFacade {
 
     private final StockService stockService;
 
-    public OptimisticLockStockFacade(StockService stockService) {
+    private final int maxAttempts;
+
+    private final long baseBackoffMillis;
+
+    private final long maxBackoffMillis;
+
+    private final double pessimisticThreshold;
+
+    private final StockLockMeters meters;
+
+    // 통계는 최근에 다뤄진 재고만 유지한다.
+    private final Cache<Long, OptimisticConflictStatistics> statistics = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .build();
+
+    public OptimisticLockStockFacade(StockService stockService,
+                                     StockMetrics stockMetrics,
+                                     @Value("${stock.optimistic.max-attempts:10}") int maxAttempts,
+                                     @Value("${stock.optimistic.base-backoff:10ms}") Duration baseBackoff,
+                                     @Value("${stock.optimistic.max-backoff:200ms}") Duration maxBackoff,
+                                     @Value("${stock.optimistic.pessimistic-threshold:0.5}") double pessimisticThreshold) {
         this.stockService = stockService;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMillis = baseBackoff.toMillis();
+        this.maxBackoffMillis = maxBackoff.toMillis();
+        this.pessimisticThreshold = pessimisticThreshold;
+        this.meters = stockMetrics.lock("optimistic");
     }
 
+    /**
+     * 버전 충돌이나 락 대기 실패 같은 동시성 예외일 때만 재시도한다. 재고 부족 같은 다른 예외는 그대로 던진다.
+     * 충돌률이 임계값을 넘었거나 재시도 횟수를 다 쓰면 행 잠금을 잡는 조건부 UPDATE 로 처리한다.
+     * (엔티티를 읽어 쓰는 비관적 락 경로는 다른 쓰레드의 버전 증가와 다시 충돌할 수 있다)
+     */
     public void decreaseWithOptimisticLock(Long id, Long quantity) throws InterruptedException {
-        while (true) {
-            try {
-                stockService.decreaseWithOptimisticLock(id, quantity);
-                break;
-            } catch (Exception e) {
-                Thread.sleep(50);
+        OptimisticConflictStatistics stats = getStatistics(id);
+
+        if (stats.getConflictRate() < pessimisticThreshold) {
+            for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+                long start = System.nanoTime();
+                try {
+                    stockService.decreaseWithOptimisticLock(id, quantity);
+                    stats.recordSuccess();
+                    return;
+                } catch (ConcurrencyFailureException e) {
+                    stats.recordConflict();
+                } finally {
+                    meters.recordHold(id, System.nanoTime() - start);
+                }
+
+                if (attempt < maxAttempts) {
+                    stats.recordRetry();
+                    meters.recordRetry(id);
+                    Thread.sleep(backoff(attempt));
+                }
             }
         }
+
+        stats.recordPessimisticFallback();
+        stockService.decreaseWithConditionalUpdate(id, quantity);
+    }
+
+    public OptimisticConflictStatistics getStatistics(Long id) {
+        return statistics.get(id, key -> new OptimisticConflictStatistics());
+    }
+
+    private long backoff(int attempt) {
+        long backoff = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
     }
 }
@@ -1,5 +1,9 @@
 package com.example.concurrency.facade;
 
+import com.example.concurrency.lock.LockAcquisitionTimeoutException;
+import com.example.concurrency.lock.RedissonFence;
+import com.example.concurrency.metrics.StockLockMeters;
+import com.example.concurrency.metrics.StockMetrics;
 import com.example.concurrency.service.StockService;
 import java.util.concurrent.TimeUnit;
 import org.redisson.api.RLock;
@@ -11,29 +15,54 @@ public class RedissonLockStockFacade {
 
     private RedissonClient redissonClient;
 
+    private RedissonFence redissonFence;
+
     private StockService stockService;
 
-    public RedissonLockStockFacade(RedissonClient redissonClient, StockService stockService) {
+    private final StockLockMeters meters;
+
+    public RedissonLockStockFacade(RedissonClient redissonClient, RedissonFence redissonFence,
+                                   StockService stockService, StockMetrics stockMetrics) {
         this.redissonClient = redissonClient;
+        this.redissonFence = redissonFence;
         this.stockService = stockService;
+        this.meters = stockMetrics.lock("redisson");
     }
 
+    /**
+     * leaseTime 을 주지 않으므로 Redisson watchdog 이 작업이 끝날 때까지 lease 를 갱신한다. (stock.redisson-lock.watchdog-timeout)
+     * DB 쓰기는 락을 아직 잡고 있는지 확인하면서 받은 펜싱 토큰으로 조건을 건다. ({@link RedissonFence})
+     * @throws LockAcquisitionTimeoutException 5초 안에 락을 잡지 못했거나, 토큰을 받기 전에 락을 잃었을 때
+     */
     public void decrease(Long key, Long quantity) {
         RLock lock = redissonClient.getLock(key.toString());
 
+        long start = System.nanoTime();
+        boolean available;
         try {
-            boolean available = lock.tryLock(5, 1, TimeUnit.SECONDS);
-
-            if (!available) {
-                System.out.println("lock 획득 실패");
-                return;
-            }
-
-            stockService.decrease(key, quantity);
+            available = lock.tryLock(5, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
+        }
+
+        if (!available) {
+            meters.recordTimeout(key);
+            throw new LockAcquisitionTimeoutException(key);
+        }
+
+        long acquired = System.nanoTime();
+        meters.recordWait(key, acquired - start);
+        try {
+            long fenceToken = redissonFence.issue(lock, Thread.currentThread().getId(), key);
+            stockService.decreaseWithFence(key, quantity, fenceToken);
         } finally {
-            lock.unlock();
+            long released = System.nanoTime();
+            meters.recordHold(key, released - acquired);
+            // lease 가 끝나 다른 쪽이 잡은 락은 풀지 않는다.
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+            meters.recordRelease(key, System.nanoTime() - released);
         }
     }
 }
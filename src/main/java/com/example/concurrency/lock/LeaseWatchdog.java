@@ -0,0 +1,92 @@
+package com.example.concurrency.lock;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import javax.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+/**
+ * 작업이 끝날 때까지 분산 락의 lease 를 lease/3 마다 갱신한다.
+ * lease 를 짧게 두어도 오래 걸리는 작업 중에 락이 풀리지 않고, 죽은 노드의 락은 lease 안에 풀린다.
+ * 갱신에 실패하면(GC 등으로 이미 만료) 더 갱신하지 않는다. 그 뒤의 쓰기는 펜싱 토큰이 막는다.
+ */
+@Component
+public class LeaseWatchdog {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lock-lease-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param acquiredNanos 락을 잡은 시각 (System.nanoTime). 첫 갱신 전까지는 이 시각 + lease 까지만 유효하다.
+     * @param renew lease 를 갱신한다. 내 락이 아니면 false
+     */
+    public Lease watch(Duration lease, long acquiredNanos, BooleanSupplier renew) {
+        long leaseNanos = lease.toNanos();
+        Lease watched = new Lease(acquiredNanos + leaseNanos);
+        long period = Math.max(1, lease.toMillis() / 3);
+        watched.renewal = scheduler.scheduleAtFixedRate(() -> {
+            try {
+                long start = System.nanoTime();
+                if (renew.getAsBoolean()) {
+                    watched.expiresAt = start + leaseNanos;
+                } else {
+                    watched.lose();
+                }
+            } catch (RuntimeException e) {
+                watched.lose();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        return watched;
+    }
+
+    @PreDestroy
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    public static class Lease implements AutoCloseable {
+
+        private volatile ScheduledFuture<?> renewal;
+
+        private volatile boolean lost;
+
+        // 마지막으로 성공한 갱신(없으면 락을 잡은 시각) + lease
+        private volatile long expiresAt;
+
+        private Lease(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * @return 갱신에 실패해 락을 잃었으면 true
+         */
+        public boolean isLost() {
+            return lost;
+        }
+
+        /**
+         * @return 락을 잃었거나, 마지막 갱신 뒤로 lease 가 지나 이미 풀렸을 수 있으면 true
+         */
+        public boolean isExpired() {
+            return lost || System.nanoTime() - expiresAt >= 0;
+        }
+
+        @Override
+        public void close() {
+            renewal.cancel(false);
+        }
+
+        // 첫 갱신은 period 뒤라서 renewal 이 먼저 설정된다.
+        private void lose() {
+            lost = true;
+            renewal.cancel(false);
+        }
+    }
+}
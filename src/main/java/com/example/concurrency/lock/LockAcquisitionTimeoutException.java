@@ -0,0 +1,8 @@
+package com.example.concurrency.lock;
+
+public class LockAcquisitionTimeoutException extends RuntimeException {
+
+    public LockAcquisitionTimeoutException(Object key) {
+        super("lock 획득 실패: key=" + key);
+    }
+}
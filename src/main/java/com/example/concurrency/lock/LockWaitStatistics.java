@@ -0,0 +1,96 @@
+package com.example.concurrency.lock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 락 획득 통계. 획득 횟수, 획득까지 시도한 횟수, 대기 시간 분포를 센다.
+ * 대기 시간은 2의 거듭제곱 밀리초 구간으로 나눠 세므로 백분위는 구간 상한으로 근사된다.
+ */
+public class LockWaitStatistics {
+
+    // 0ms, 1ms, 2ms, 4ms ... 2^(BUCKET_COUNT-2)ms, 그 이상
+    private static final int BUCKET_COUNT = 16;
+
+    private final LongAdder acquisitions = new LongAdder();
+
+    private final LongAdder attempts = new LongAdder();
+
+    private final LongAdder timeouts = new LongAdder();
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+
+    public LockWaitStatistics() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void recordAcquired(int attemptCount, long waitNanos) {
+        acquisitions.increment();
+        attempts.add(attemptCount);
+        buckets[bucket(TimeUnit.NANOSECONDS.toMillis(waitNanos))].increment();
+    }
+
+    public void recordTimeout(int attemptCount) {
+        timeouts.increment();
+        attempts.add(attemptCount);
+    }
+
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    /**
+     * 락 한 번 획득에 든 평균 시도 횟수.
+     */
+    public double getAttemptsPerAcquisition() {
+        long acquired = acquisitions.sum();
+        return acquired == 0 ? 0 : (double) attempts.sum() / acquired;
+    }
+
+    /**
+     * @param percentile 0 ~ 1 (예: 0.99)
+     * @return 대기 시간 백분위의 상한(ms)
+     */
+    public long getWaitMillisAt(double percentile) {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        long target = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= target && seen > 0) {
+                return upperBound(i);
+            }
+        }
+        return 0;
+    }
+
+    private static int bucket(long millis) {
+        if (millis <= 0) {
+            return 0;
+        }
+        int bucket = 64 - Long.numberOfLeadingZeros(millis);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket == BUCKET_COUNT - 1) {
+            return Long.MAX_VALUE;
+        }
+        return bucket == 0 ? 0 : (1L << bucket) - 1;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.concurrency.lock;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * DB 별 named lock 함수. 획득/해제 결과를 그대로 돌려준다.
+ */
+enum NamedLockDialect {
+
+    // H2 에는 이 함수들이 없다. 테스트와 벤치마크는 같은 이름의 함수를 별칭으로 등록해서 쓴다.
+    MYSQL {
+        @Override
+        boolean lock(Connection connection, String key, long timeoutMillis) throws SQLException {
+            return queryForInt(connection, "SELECT GET_LOCK(?, ?)", key, Math.max(1, timeoutMillis / 1000)) == 1;
+        }
+
+        @Override
+        boolean unlock(Connection connection, String key) throws SQLException {
+            return queryForInt(connection, "SELECT RELEASE_LOCK(?)", key) == 1;
+        }
+    },
+    POSTGRESQL {
+        // lock_timeout 을 넘기면 55P03(lock_not_available) 으로 실패한다.
+        private static final String LOCK_NOT_AVAILABLE = "55P03";
+
+        @Override
+        boolean lock(Connection connection, String key, long timeoutMillis) throws SQLException {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET lock_timeout = " + timeoutMillis);
+            }
+
+            try {
+                queryForInt(connection, "SELECT 1 FROM pg_advisory_lock(hashtext(?))", key);
+                return true;
+            } catch (SQLException e) {
+                if (LOCK_NOT_AVAILABLE.equals(e.getSQLState())) {
+                    return false;
+                }
+                throw e;
+            } finally {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("RESET lock_timeout");
+                }
+            }
+        }
+
+        @Override
+        boolean unlock(Connection connection, String key) throws SQLException {
+            return queryForBoolean(connection, "SELECT pg_advisory_unlock(hashtext(?))", key);
+        }
+    };
+
+    abstract boolean lock(Connection connection, String key, long timeoutMillis) throws SQLException;
+
+    abstract boolean unlock(Connection connection, String key) throws SQLException;
+
+    static NamedLockDialect of(String url) {
+        return url != null && url.startsWith("jdbc:postgresql:") ? POSTGRESQL : MYSQL;
+    }
+
+    // get_lock / release_lock 은 실패나 오류일 때 NULL 을 돌려줄 수 있다. (NULL 은 0 으로 본다)
+    private static int queryForInt(Connection connection, String sql, Object... args) throws SQLException {
+        try (ResultSet resultSet = query(connection, sql, args)) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
+
+    private static boolean queryForBoolean(Connection connection, String sql, Object... args) throws SQLException {
+        try (ResultSet resultSet = query(connection, sql, args)) {
+            return resultSet.next() && resultSet.getBoolean(1);
+        }
+    }
+
+    private static ResultSet query(Connection connection, String sql, Object... args) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        for (int i = 0; i < args.length; i++) {
+            statement.setObject(i + 1, args[i]);
+        }
+        statement.closeOnCompletion();
+        return statement.executeQuery();
+    }
+}
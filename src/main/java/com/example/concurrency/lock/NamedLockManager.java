@@ -0,0 +1,94 @@
+package com.example.concurrency.lock;
+
+import com.example.concurrency.metrics.StockLockMeters;
+import com.example.concurrency.metrics.StockMetrics;
+import com.zaxxer.hikari.HikariDataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * DB named lock (get_lock / pg_advisory_lock) 을 전용 커넥션 풀에서 잡는다.
+ * 락은 커넥션(세션)에 묶이므로, 락을 잡은 커넥션을 업무용 풀에서 빌리면 요청 하나가 커넥션 두 개를 쓰게 되고
+ * 동시 요청이 풀 크기의 절반을 넘으면 서로 커넥션을 기다리며 멈춘다.
+ * 락용 풀을 따로 두면 업무 로직은 업무용 풀에서 커넥션 하나만 쓴다.
+ */
+@Slf4j
+@Component
+public class NamedLockManager {
+
+    private final HikariDataSource dataSource;
+
+    private final NamedLockDialect dialect;
+
+    private final long timeoutMillis;
+
+    private final StockLockMeters meters;
+
+    public NamedLockManager(DataSourceProperties properties,
+                            StockMetrics stockMetrics,
+                            @Value("${stock.named-lock.pool-size:5}") int poolSize,
+                            @Value("${stock.named-lock.timeout:3s}") Duration timeout) {
+        this.dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        this.dataSource.setPoolName("named-lock");
+        this.dataSource.setMaximumPoolSize(poolSize);
+        this.dialect = NamedLockDialect.of(dataSource.getJdbcUrl());
+        this.timeoutMillis = timeout.toMillis();
+        this.meters = stockMetrics.lock("named-lock");
+    }
+
+    public void executeWithLock(String key, Runnable runnable) {
+        executeWithLock(key, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * 락을 잡고 supplier 를 실행한 뒤 락을 푼다.
+     * @throws LockAcquisitionTimeoutException 시간 안에 락을 얻지 못한 경우
+     */
+    public <T> T executeWithLock(String key, Supplier<T> supplier) {
+        try (Connection connection = dataSource.getConnection()) {
+            long start = System.nanoTime();
+            if (!dialect.lock(connection, key, timeoutMillis)) {
+                meters.recordTimeout(key);
+                throw new LockAcquisitionTimeoutException(key);
+            }
+
+            long acquired = System.nanoTime();
+            meters.recordWait(key, acquired - start);
+            try {
+                return supplier.get();
+            } finally {
+                long released = System.nanoTime();
+                meters.recordHold(key, released - acquired);
+                unlock(connection, key);
+                meters.recordRelease(key, System.nanoTime() - released);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("named lock 처리 실패: key=" + key, e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        dataSource.close();
+    }
+
+    /*
+    해제에 실패하면 락이 세션에 남아 있을 수 있다. 커넥션을 풀에 돌려주지 않고 닫아서 세션과 함께 락도 정리되게 한다.
+     */
+    private void unlock(Connection connection, String key) throws SQLException {
+        if (!dialect.unlock(connection, key)) {
+            log.warn("named lock 해제 실패, 커넥션을 폐기합니다. key={}", key);
+            dataSource.evictConnection(connection);
+        }
+    }
+}
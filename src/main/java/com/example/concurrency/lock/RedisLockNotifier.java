@@ -0,0 +1,54 @@
+package com.example.concurrency.lock;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Redis 락 해제 알림을 받아 같은 키를 기다리는 쓰레드 하나를 깨운다.
+ * 해제 한 번에 대기자 하나만 깨우므로 모든 대기자가 동시에 SETNX 를 보내지 않는다.
+ */
+@Component
+public class RedisLockNotifier implements MessageListener {
+
+    private final ConcurrentHashMap<String, Signal> signals = new ConcurrentHashMap<>();
+
+    /**
+     * 락 해제 알림이 오거나 timeout 이 지날 때까지 기다린다.
+     * @return 알림을 받았으면 true
+     */
+    public boolean await(String key, long timeoutMillis) throws InterruptedException {
+        Signal signal = signals.compute(key, (k, current) -> {
+            if (current == null) {
+                current = new Signal();
+            }
+            current.waiters++;
+            return current;
+        });
+        try {
+            return signal.semaphore.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            signals.computeIfPresent(key, (k, current) -> --current.waiters == 0 ? null : current);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Signal signal = signals.get(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (signal != null) {
+            signal.semaphore.release();
+        }
+    }
+
+    private static class Signal {
+
+        private final Semaphore semaphore = new Semaphore(0);
+
+        // signals 의 compute 안에서만 읽고 쓴다.
+        private int waiters;
+    }
+}
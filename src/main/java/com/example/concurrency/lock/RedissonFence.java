@@ -0,0 +1,65 @@
+package com.example.concurrency.lock;
+
+import com.example.concurrency.repository.RedisLockRepository;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.redisson.api.RLock;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Component;
+
+/**
+ * Redisson 락을 아직 잡고 있을 때만 펜싱 토큰을 준다.
+ * 소유 확인과 INCR 을 스크립트 하나로 하므로, 토큰을 받기 전에 lease 가 끝나 다른 쪽이 락을 잡았으면 토큰을 받지 못한다.
+ * 그래서 토큰은 항상 락을 잡은 순서대로 커진다. 카운터는 Lettuce 락과 같은 {@link RedisLockRepository#fenceKey(Long)} 를 쓴다.
+ */
+@Component
+public class RedissonFence {
+
+    // Redisson 락은 hash 이고, 소유자는 "<클라이언트 id>:<쓰레드 id>" 필드로 들어 있다.
+    private static final String ISSUE_SCRIPT =
+            "if redis.call('hexists', KEYS[1], ARGV[1]) == 1 then "
+                    + "return redis.call('incr', KEYS[2]) "
+                    + "end "
+                    + "return 0";
+
+    private final RedissonClient redissonClient;
+
+    public RedissonFence(RedissonClient redissonClient) {
+        this.redissonClient = redissonClient;
+    }
+
+    /**
+     * @param ownerId 락을 잡을 때 쓴 쓰레드 id
+     * @throws LockAcquisitionTimeoutException 토큰을 받기 전에 락을 잃었을 때
+     */
+    public long issue(RLock lock, long ownerId, Long key) {
+        Long fence = redissonClient.getScript(StringCodec.INSTANCE).eval(lock.getName(), RScript.Mode.READ_WRITE,
+                ISSUE_SCRIPT, RScript.ReturnType.INTEGER, keys(lock, key), ownerName(ownerId));
+        return checked(fence, key);
+    }
+
+    public CompletableFuture<Long> issueAsync(RLock lock, long ownerId, Long key) {
+        return redissonClient.getScript(StringCodec.INSTANCE).<Long>evalAsync(lock.getName(), RScript.Mode.READ_WRITE,
+                        ISSUE_SCRIPT, RScript.ReturnType.INTEGER, keys(lock, key), ownerName(ownerId))
+                .toCompletableFuture()
+                .thenApply(fence -> checked(fence, key));
+    }
+
+    private List<Object> keys(RLock lock, Long key) {
+        return Arrays.asList(lock.getName(), RedisLockRepository.fenceKey(key));
+    }
+
+    private String ownerName(long ownerId) {
+        return redissonClient.getId() + ":" + ownerId;
+    }
+
+    private long checked(Long fence, Long key) {
+        if (fence == null || fence == 0L) {
+            throw new LockAcquisitionTimeoutException(key);
+        }
+        return fence;
+    }
+}
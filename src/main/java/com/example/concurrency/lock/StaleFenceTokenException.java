@@ -0,0 +1,8 @@
+package com.example.concurrency.lock;
+
+public class StaleFenceTokenException extends RuntimeException {
+
+    public StaleFenceTokenException(Long id, long fenceToken, long latestFenceToken) {
+        super("이전 락 소유자의 쓰기: id=" + id + ", token=" + fenceToken + ", latest=" + latestFenceToken);
+    }
+}
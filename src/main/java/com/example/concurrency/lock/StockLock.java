@@ -0,0 +1,195 @@
+package com.example.concurrency.lock;
+
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 재고 id 하나에 대응하는 락과 재고 대기열.
+ * {@link StockLockRegistry} 를 통해서만 얻고 반납해야 한다.
+ * <p>
+ * 대기열은 재고가 모자라 기다리는 요청을 도착 순서대로 가진다. 재고가 늘면 순서대로 보면서 요청 수량이 남은 재고에
+ * 들어가는 대기자만 깨우고, 깨운 수량은 예약해 둔다. (나중에 도착한 요청이 먼저 가져가지 못함)
+ * 대기자마다 깨우는 통로가 따로 있어서, 재고가 늘어도 깨울 대기자만 깨어난다.
+ * 대기열 메서드는 서비스가 잡는 락(이 객체의 ReentrantLock 또는 이 객체의 모니터) 안에서만 호출한다.
+ */
+public class StockLock {
+
+    private final Long id;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // StockLockRegistry 의 compute 안에서만 읽고 쓴다.
+    int users;
+
+    // 중간의 대기자를 꺼낼 때 O(1) 이도록 연결 리스트를 쓴다.
+    private final Deque<Waiter> waiters = new LinkedList<>();
+
+    // 기다리는 요청 수량별 대기자 수. 남은 재고로 깨울 수 있는 대기자가 더 없으면 대기열을 그만 본다.
+    private final TreeMap<Long, Integer> waitingQuantities = new TreeMap<>();
+
+    private int waiting;
+
+    // 깨웠지만 아직 감소하지 않은 수량
+    private long reserved;
+
+    StockLock(Long id) {
+        this.id = id;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void lock() {
+        lock.lock();
+    }
+
+    public boolean tryLock(long timeout, TimeUnit unit) throws InterruptedException {
+        return lock.tryLock(timeout, unit);
+    }
+
+    public void unlock() {
+        lock.unlock();
+    }
+
+    public boolean isHeldByCurrentThread() {
+        return lock.isHeldByCurrentThread();
+    }
+
+    /**
+     * 대기열 끝에 선다. 락을 놓은 뒤 {@link Waiter#await(long)} 로 기다린다.
+     */
+    public Waiter enqueue(long quantity) {
+        Waiter waiter = new Waiter(quantity);
+        waiters.addLast(waiter);
+        waitingQuantities.merge(quantity, 1, Integer::sum);
+        waiting++;
+        return waiter;
+    }
+
+    /**
+     * 재고가 늘었을 때 호출한다.
+     * @param quantity 늘어난 뒤의 재고 수량
+     * @return 깨운 대기자 수
+     */
+    public int signalAvailable(long quantity) {
+        return grant(quantity - reserved);
+    }
+
+    /**
+     * 깨어난 대기자가 락을 다시 잡은 뒤 호출한다. 예약을 풀고, 감소는 호출한 쪽에서 {@link #getReserved()} 를 빼고 확인한다.
+     */
+    public void consume(Waiter waiter) {
+        if (waiter.isGranted()) {
+            reserved -= waiter.quantity;
+        }
+    }
+
+    /**
+     * 시간 초과나 인터럽트로 기다리기를 그만둔다.
+     * 그 사이에 깨워졌다면 예약된 수량을 다음 대기자에게 넘긴다.
+     */
+    public void cancel(Waiter waiter) {
+        if (waiter.isGranted()) {
+            reserved -= waiter.quantity;
+            grant(waiter.quantity);
+            return;
+        }
+        if (waiter.cancel()) {
+            removeWaiting(waiter.quantity);
+        }
+    }
+
+    public long getReserved() {
+        return reserved;
+    }
+
+    public int getWaiterCount() {
+        return waiting;
+    }
+
+    /*
+    취소된 대기자는 여기서 만날 때 치운다. 남은 재고가 가장 작은 요청보다 작아지면 더 볼 필요가 없으므로 멈춘다.
+     */
+    private int grant(long free) {
+        int woken = 0;
+        Iterator<Waiter> iterator = waiters.iterator();
+        while (iterator.hasNext() && !waitingQuantities.isEmpty() && free >= waitingQuantities.firstKey()) {
+            Waiter waiter = iterator.next();
+            if (waiter.isCancelled()) {
+                iterator.remove();
+                continue;
+            }
+            if (waiter.quantity <= free) {
+                iterator.remove();
+                removeWaiting(waiter.quantity);
+                free -= waiter.quantity;
+                reserved += waiter.quantity;
+                waiter.grant();
+                woken++;
+            }
+        }
+        return woken;
+    }
+
+    private void removeWaiting(long quantity) {
+        waitingQuantities.computeIfPresent(quantity, (key, count) -> count == 1 ? null : count - 1);
+        waiting--;
+    }
+
+    /**
+     * 재고를 기다리는 요청 하나. 깨우기는 이 객체의 모니터로 하므로 락을 놓고 기다린다.
+     */
+    public static class Waiter {
+
+        private final long quantity;
+
+        private boolean granted;
+
+        private boolean cancelled;
+
+        private Waiter(long quantity) {
+            this.quantity = quantity;
+        }
+
+        /**
+         * @return 시간 안에 깨워졌으면 true
+         */
+        public synchronized boolean await(long timeoutNanos) throws InterruptedException {
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (!granted) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+
+        public synchronized boolean isGranted() {
+            return granted;
+        }
+
+        synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        private synchronized void grant() {
+            granted = true;
+            notify();
+        }
+
+        private synchronized boolean cancel() {
+            if (cancelled) {
+                return false;
+            }
+            cancelled = true;
+            return true;
+        }
+    }
+}
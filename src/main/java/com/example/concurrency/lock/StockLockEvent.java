@@ -0,0 +1,60 @@
+package com.example.concurrency.lock;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 락 획득 / 재고 대기 / 시그널을 JFR 이벤트로 남긴다. (로그 대신 쓰는 추적용)
+ * JFR 기록 중이 아니면 begin / commit 은 아무 일도 하지 않으므로, 평소에는 락 안에서 드는 비용이 거의 없다.
+ * <pre>
+ * jcmd &lt;pid&gt; JFR.start name=stock duration=60s filename=stock.jfr
+ * jfr print --events com.example.stock.Lock stock.jfr
+ * </pre>
+ */
+@Name("com.example.stock.Lock")
+@Label("Stock Lock")
+@Category({"Stock", "Lock"})
+@Description("재고 락 획득, 재고 대기, 시그널")
+@StackTrace(false)
+public class StockLockEvent extends Event {
+
+    public static final String ACQUIRE = "acquire";
+
+    public static final String WAIT = "wait";
+
+    public static final String SIGNAL = "signal";
+
+    @Label("Strategy")
+    private String strategy;
+
+    @Label("Action")
+    private String action;
+
+    @Label("Stock Id")
+    private long stockId;
+
+    /**
+     * 구간 이벤트를 시작한다. 끝나는 시점에 {@link #commit()} 을 호출한다.
+     */
+    public static StockLockEvent begin(String strategy, String action, Long stockId) {
+        StockLockEvent event = new StockLockEvent();
+        if (event.isEnabled()) {
+            event.strategy = strategy;
+            event.action = action;
+            event.stockId = stockId;
+            event.begin();
+        }
+        return event;
+    }
+
+    /**
+     * 시점 이벤트(시그널)를 남긴다.
+     */
+    public static void instant(String strategy, String action, Long stockId) {
+        begin(strategy, action, stockId).commit();
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.concurrency.lock;
+
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.stereotype.Component;
+
+/**
+ * 재고 id 별 락 저장소.
+ * 사용 중인(락을 잡고 있거나 기다리는) 쓰레드 수를 세어서, 아무도 쓰지 않는 id 의 락은 바로 제거한다.
+ * 그래서 맵의 크기는 전체 상품 수가 아니라 동시에 다뤄지는 상품 수로 제한된다.
+ */
+@Component
+public class StockLockRegistry {
+
+    private final ConcurrentHashMap<Long, StockLock> locks = new ConcurrentHashMap<>();
+
+    /**
+     * id 에 해당하는 락을 빌려온다. 반드시 {@link #release(StockLock)} 로 반납해야 한다.
+     */
+    public StockLock acquire(Long id) {
+        return locks.compute(id, (key, stockLock) -> {
+            if (stockLock == null) {
+                stockLock = new StockLock(key);
+            }
+            stockLock.users++;
+            return stockLock;
+        });
+    }
+
+    public void release(StockLock stockLock) {
+        locks.computeIfPresent(stockLock.getId(), (key, current) -> {
+            if (current != stockLock) {
+                return current;
+            }
+            return --current.users == 0 ? null : current;
+        });
+    }
+
+    public int size() {
+        return locks.size();
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.concurrency.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 전략 하나의 락 메트릭.
+ * 재고 id 별 미터는 처음 기록할 때 만들어 캐시하므로, 이후 기록은 맵 조회와 값 누적만 한다. (Timer.Sample 같은 객체를 만들지 않음)
+ * 태그 종류가 무한히 늘지 않도록 sku 태그는 처음 본 maxSkuTags 개 재고에만 붙이고, 나머지는 sku=other 로 합친다.
+ * <p>
+ * 퍼센타일 히스토그램은 sku 태그가 없는 stock.lock.latency (phase=wait|hold|release) 에만 켠다.
+ * sku 별 타이머에 히스토그램을 켜면 버킷 수 × sku 수만큼 시계열이 생기고, sku 태그는 먼저 본 재고에 붙으므로 많이 쓰이는 재고라는 보장도 없다.
+ */
+public class StockLockMeters {
+
+    static final String OTHER = "other";
+
+    private final MeterRegistry registry;
+
+    private final String strategy;
+
+    private final int maxSkuTags;
+
+    private final ConcurrentHashMap<Object, Meters> meters = new ConcurrentHashMap<>();
+
+    private final Meters other;
+
+    private final Timer waitLatency;
+
+    private final Timer holdLatency;
+
+    private final Timer releaseLatency;
+
+    StockLockMeters(MeterRegistry registry, String strategy, int maxSkuTags) {
+        this.registry = registry;
+        this.strategy = strategy;
+        this.maxSkuTags = maxSkuTags;
+        this.other = new Meters(OTHER);
+        this.waitLatency = latency("wait");
+        this.holdLatency = latency("hold");
+        this.releaseLatency = latency("release");
+    }
+
+    public void recordWait(Object sku, long nanos) {
+        waitLatency.record(nanos, TimeUnit.NANOSECONDS);
+        meters(sku).wait.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordHold(Object sku, long nanos) {
+        holdLatency.record(nanos, TimeUnit.NANOSECONDS);
+        meters(sku).hold.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRelease(Object sku, long nanos) {
+        releaseLatency.record(nanos, TimeUnit.NANOSECONDS);
+        meters(sku).release.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordTimeout(Object sku) {
+        meters(sku).timeouts.increment();
+    }
+
+    public void recordRetry(Object sku) {
+        meters(sku).retries.increment();
+    }
+
+    private Meters meters(Object sku) {
+        Meters found = meters.get(sku);
+        if (found != null) {
+            return found;
+        }
+        // 한도 확인과 추가가 원자적이지 않아 동시에 들어오면 한도를 조금 넘을 수 있다. (쓰레드 수 이내)
+        if (meters.size() >= maxSkuTags) {
+            return other;
+        }
+        return meters.computeIfAbsent(sku, key -> new Meters(key.toString()));
+    }
+
+    private Timer latency(String phase) {
+        return Timer.builder("stock.lock.latency")
+                .description("락 단계별 시간 (전체 재고)")
+                .tag("strategy", strategy)
+                .tag("phase", phase)
+                .register(registry);
+    }
+
+    private class Meters {
+
+        private final Timer wait;
+
+        private final Timer hold;
+
+        private final Timer release;
+
+        private final Counter timeouts;
+
+        private final Counter retries;
+
+        private Meters(String sku) {
+            this.wait = timer("stock.lock.wait", "락 획득 대기 시간", sku);
+            this.hold = timer("stock.lock.hold", "락 보유 시간", sku);
+            this.release = timer("stock.lock.release", "락 해제 시간", sku);
+            this.timeouts = counter("stock.lock.timeouts", "락 획득 시간 초과 횟수", sku);
+            this.retries = counter("stock.optimistic.retries", "버전 충돌 재시도 횟수", sku);
+        }
+
+        private Timer timer(String name, String description, String sku) {
+            return Timer.builder(name)
+                    .description(description)
+                    .tag("strategy", strategy)
+                    .tag("sku", sku)
+                    .register(registry);
+        }
+
+        private Counter counter(String name, String description, String sku) {
+            return Counter.builder(name)
+                    .description(description)
+                    .tag("strategy", strategy)
+                    .tag("sku", sku)
+                    .register(registry);
+        }
+    }
+}
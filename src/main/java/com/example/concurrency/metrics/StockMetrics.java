@@ -0,0 +1,44 @@
+package com.example.concurrency.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 재고 락 메트릭 생성기. 전략마다 {@link StockLockMeters} 를 한 번 만들어 두고 계속 쓴다.
+ * <p>
+ * stock.lock.wait / hold / release (Timer), stock.lock.timeouts, stock.optimistic.retries (Counter),
+ * stock.db.flush (Timer) 를 strategy 태그와 함께 기록한다. 락 시간은 sku 태그 없이 stock.lock.latency (Timer) 에도 합쳐 기록한다.
+ * stock.admission.rejected (Counter) 는 동시 요청 한도로 거절된 요청 수다.
+ */
+@Component
+public class StockMetrics {
+
+    private final MeterRegistry registry;
+
+    private final int maxSkuTags;
+
+    public StockMetrics(MeterRegistry registry, @Value("${stock.metrics.max-sku-tags:100}") int maxSkuTags) {
+        this.registry = registry;
+        this.maxSkuTags = maxSkuTags;
+    }
+
+    public StockLockMeters lock(String strategy) {
+        return new StockLockMeters(registry, strategy, maxSkuTags);
+    }
+
+    public Timer flush(String strategy) {
+        return Timer.builder("stock.db.flush")
+                .description("DB 반영(flush) 시간")
+                .tag("strategy", strategy)
+                .register(registry);
+    }
+
+    public Counter admissionRejected() {
+        return Counter.builder("stock.admission.rejected")
+                .description("동시 요청 한도로 거절된 요청 수")
+                .register(registry);
+    }
+}
@@ -1,14 +0,0 @@
-package com.example.concurrency.repository;
-
-import com.example.concurrency.domain.Stock;
-import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
-import org.springframework.data.jpa.repository.Query;
-
-public interface LockRepository extends JpaRepository<Stock, Long> {
-    @Query(value = "SELECT get_lock(:key, 3000)", nativeQuery = true)
-    void getLock(String key);
-
-    @Query(value = "SELECT release_lock(:key)", nativeQuery = true)
-    void releaseLock(String key);
-}
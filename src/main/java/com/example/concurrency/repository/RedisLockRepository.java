@@ -1,30 +1,122 @@
 package com.example.concurrency.repository;
 
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
 
 @Component
 public class RedisLockRepository {
 
+    /**
+     * 락이 해제될 때 해제된 키를 발행하는 채널.
+     */
+    public static final String RELEASE_CHANNEL = "stock-lock:released";
+
+    // 내 토큰일 때만 지우고, 지웠으면 대기자에게 알린다.
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then "
+                    + "redis.call('del', KEYS[1]) "
+                    + "redis.call('publish', ARGV[2], KEYS[1]) "
+                    + "return 1 "
+                    + "end "
+                    + "return 0",
+            Long.class);
+
+    // 락을 잡았을 때만 펜싱 토큰을 올린다. 토큰은 락이 풀려도 줄지 않는다.
+    private static final RedisScript<Long> FENCED_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then "
+                    + "return redis.call('incr', KEYS[2]) "
+                    + "end "
+                    + "return 0",
+            Long.class);
+
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then "
+                    + "return redis.call('pexpire', KEYS[1], ARGV[2]) "
+                    + "end "
+                    + "return 0",
+            Long.class);
+
     private RedisTemplate<String, String> redisTemplate;
 
-    public RedisLockRepository(RedisTemplate<String, String> redisTemplate) {
+    private final Duration ttl;
+
+    private final LongAdder operations = new LongAdder();
+
+    public RedisLockRepository(RedisTemplate<String, String> redisTemplate,
+                               @Value("${stock.lettuce-lock.ttl:3s}") Duration ttl) {
         this.redisTemplate = redisTemplate;
+        this.ttl = ttl;
     }
 
-    public Boolean lock(Long key) {
+    /**
+     * @param token 락 소유자를 구분하는 값. unlock 할 때 같은 값을 넘겨야 한다.
+     */
+    public Boolean lock(Long key, String token) {
+        operations.increment();
         return redisTemplate
                 .opsForValue()
-                .setIfAbsent(generateKey(key), "lock", Duration.ofMillis(3_000));
+                .setIfAbsent(generateKey(key), token, ttl);
+    }
+
+    /**
+     * 락을 잡고 펜싱 토큰을 받는다. 같은 키의 토큰은 락을 잡을 때마다 커진다.
+     * @return 펜싱 토큰. 락을 잡지 못했으면 null
+     */
+    public Long lockWithFence(Long key, String token) {
+        operations.increment();
+        Long fence = redisTemplate.execute(FENCED_LOCK_SCRIPT, Arrays.asList(generateKey(key), fenceKey(key)),
+                token, String.valueOf(ttl.toMillis()));
+        return fence == null || fence == 0L ? null : fence;
     }
 
-    public Boolean unlock(Long key) {
-        return redisTemplate.delete(generateKey(key));
+    /**
+     * 내가 잡은 락일 때만 TTL 을 처음부터 다시 센다.
+     * @return 이미 풀렸거나 다른 쓰레드가 잡은 락이면 false
+     */
+    public Boolean renew(Long key, String token) {
+        operations.increment();
+        Long renewed = redisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(generateKey(key)),
+                token, String.valueOf(ttl.toMillis()));
+        return renewed != null && renewed == 1L;
     }
 
-    private String generateKey(Long key) {
+    /**
+     * 내가 잡은 락일 때만 해제한다. TTL 이 지나 다른 쓰레드가 잡은 락은 지우지 않는다.
+     */
+    public Boolean unlock(Long key, String token) {
+        operations.increment();
+        Long deleted = redisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(generateKey(key)),
+                token, RELEASE_CHANNEL);
+        return deleted != null && deleted == 1L;
+    }
+
+    /**
+     * 지금까지 Redis 로 보낸 락 명령 수.
+     */
+    public long getOperationCount() {
+        return operations.sum();
+    }
+
+    public String generateKey(Long key) {
         return key.toString();
     }
 
+    /**
+     * 펜싱 토큰 카운터 키. 락 종류(Lettuce / Redisson)와 관계없이 재고마다 하나다.
+     */
+    public static String fenceKey(Long key) {
+        return "stock-lock:fence:" + key;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
 }
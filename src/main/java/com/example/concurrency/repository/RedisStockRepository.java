@@ -0,0 +1,126 @@
+package com.example.concurrency.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+/**
+ * Redis 에 저장된 재고 수량.
+ * 수량 변경과 변경 기록(stream 추가)을 Lua 스크립트 하나로 처리하므로, 기록 없이 수량만 바뀌는 경우는 없다.
+ * stream 에는 증감을 남긴다. DB 에는 증감만 더하므로 다른 경로의 변경을 덮어쓰지 않는다.
+ */
+@Component
+public class RedisStockRepository {
+
+    /**
+     * 수량 변경 기록 stream.
+     */
+    public static final String CHANGE_STREAM = "stock:changes";
+
+    /**
+     * DB 에 반영한 마지막 변경 기록 id. DB 반영을 커밋한 뒤에, stream 에서 기록을 지우기 전에 바뀐다.
+     */
+    public static final String APPLIED_KEY = "stock:changes:applied";
+
+    public static final long OK = 0;
+
+    public static final long INSUFFICIENT = 1;
+
+    public static final long NOT_LOADED = 2;
+
+    // 결과: {상태, 수량}. 부족하면 현재 수량을, 성공하면 변경 후 수량을 돌려준다.
+    private static final RedisScript<List<Long>> CHANGE_SCRIPT = listScript(
+            "local quantity = redis.call('get', KEYS[1]) "
+                    + "if not quantity then return {2, 0} end "
+                    + "local next = tonumber(quantity) + tonumber(ARGV[1]) "
+                    + "if next < 0 then return {1, tonumber(quantity)} end "
+                    + "redis.call('set', KEYS[1], next) "
+                    + "redis.call('xadd', KEYS[2], '*', 'id', ARGV[2], 'delta', ARGV[1]) "
+                    + "return {0, next}");
+
+    // DB 수량에 아직 DB 에 반영되지 않은 증감(ARGV[1] 이후의 기록)을 더해서 올린다.
+    // 그 사이에 반영 위치가 바뀌었으면 DB 수량과 stream 이 어긋나므로 0 을 돌려주고 쓰지 않는다.
+    // 반영 위치가 없으면 Redis 가 새로 떴다는 뜻이라 stream 에도 남은 기록이 없다.
+    private static final RedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "local applied = redis.call('get', KEYS[2]) "
+                    + "if applied and applied ~= ARGV[1] then return 0 end "
+                    + "local pending = {} "
+                    + "for _, entry in ipairs(redis.call('xrange', KEYS[1], ARGV[1], '+')) do "
+                    + "  if entry[1] ~= ARGV[1] then "
+                    + "    local fields, id, delta = entry[2] "
+                    + "    for i = 1, #fields, 2 do "
+                    + "      if fields[i] == 'id' then id = fields[i + 1] elseif fields[i] == 'delta' then delta = tonumber(fields[i + 1]) end "
+                    + "    end "
+                    + "    if id and delta then pending[id] = (pending[id] or 0) + delta end "
+                    + "  end "
+                    + "end "
+                    + "for i = 3, #KEYS do "
+                    + "  local id = ARGV[2 * i - 4] "
+                    + "  redis.call('set', KEYS[i], tonumber(ARGV[2 * i - 3]) + (pending[id] or 0)) "
+                    + "end "
+                    + "return 1", Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    public RedisStockRepository(RedisTemplate<String, String> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * @param delta 감소는 음수
+     * @return {상태(OK / INSUFFICIENT / NOT_LOADED), 수량}
+     */
+    public List<Long> change(Long id, long delta) {
+        return redisTemplate.execute(CHANGE_SCRIPT, Arrays.asList(generateKey(id), CHANGE_STREAM),
+                Long.toString(delta), id.toString());
+    }
+
+    /**
+     * DB 수량을 기준으로 Redis 의 재고를 맞춘다. Redis 에 남은 값은 DB 밖에서 바뀐 변경을 모르므로 쓰지 않는다.
+     * @param quantities DB 에서 읽은 수량
+     * @param appliedRecordId 수량을 읽을 때 DB 에 반영되어 있던 마지막 변경 기록 id
+     * @return 그 사이에 반영 위치가 바뀌어서 올리지 못했으면 false. DB 를 다시 읽어야 한다.
+     */
+    public boolean load(Map<Long, Long> quantities, String appliedRecordId) {
+        List<String> keys = new ArrayList<>(quantities.size() + 2);
+        List<String> args = new ArrayList<>(quantities.size() * 2 + 1);
+        keys.add(CHANGE_STREAM);
+        keys.add(APPLIED_KEY);
+        args.add(appliedRecordId);
+        quantities.forEach((id, quantity) -> {
+            keys.add(generateKey(id));
+            args.add(id.toString());
+            args.add(quantity.toString());
+        });
+        return redisTemplate.execute(LOAD_SCRIPT, keys, args.toArray()) == 1L;
+    }
+
+    public void markApplied(String recordId) {
+        redisTemplate.opsForValue().set(APPLIED_KEY, recordId);
+    }
+
+    public Long getQuantity(Long id) {
+        String quantity = redisTemplate.opsForValue().get(generateKey(id));
+        return quantity == null ? null : Long.valueOf(quantity);
+    }
+
+    public void delete(Long id) {
+        redisTemplate.delete(generateKey(id));
+    }
+
+    public String generateKey(Long id) {
+        return "stock:quantity:" + id;
+    }
+
+    // 스크립트가 정수 배열을 돌려주면 List<Long> 으로 받는다. List<Long>.class 는 쓸 수 없어서 결과 타입만 바꿔 둔다.
+    @SuppressWarnings("unchecked")
+    private static RedisScript<List<Long>> listScript(String script) {
+        Class<List<Long>> resultType = (Class<List<Long>>) (Class<?>) List.class;
+        return new DefaultRedisScript<>(script, resultType);
+    }
+}
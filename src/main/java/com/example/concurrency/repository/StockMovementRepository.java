@@ -0,0 +1,10 @@
+package com.example.concurrency.repository;
+
+import com.example.concurrency.domain.StockMovement;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface StockMovementRepository extends JpaRepository<StockMovement, Long> {
+
+    List<StockMovement> findAllByStockIdOrderById(Long stockId);
+}
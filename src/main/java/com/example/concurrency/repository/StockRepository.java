@@ -1,10 +1,15 @@
 package com.example.concurrency.repository;
 
 import com.example.concurrency.domain.Stock;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 import javax.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface StockRepository extends JpaRepository<Stock, Long> {
 
@@ -12,7 +17,77 @@ public interface StockRepository extends JpaRepository<Stock, Long> {
     @Query("select s from Stock s where s.id = :id")
     Stock findByIdWithPessimisticLock(Long id);
 
+    /**
+     * 여러 재고를 SELECT ... FOR UPDATE 한 번으로 잠근다. 항상 id 순서로 잠그므로 주문끼리 교착되지 않는다.
+     */
+    @Lock(value = LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from Stock s where s.id in :ids order by s.id")
+    List<Stock> findAllByIdWithPessimisticLock(Collection<Long> ids);
+
     @Lock(value = LockModeType.OPTIMISTIC)
     @Query("select s from Stock s where s.id = :id")
     Stock findByIdWithOptimisticLock(Long id);
+
+    /**
+     * 재고가 충분할 때만 감소시킨다. 엔티티를 읽지 않고 UPDATE 한 번으로 끝난다.
+     * @return 변경된 행 수. 0 이면 재고 부족이거나 없는 재고다.
+     */
+    @Modifying
+    @Query("update Stock s set s.quantity = s.quantity - :quantity, s.version = s.version + 1 "
+            + "where s.id = :id and s.quantity >= :quantity")
+    int decreaseIfPossible(Long id, Long quantity);
+
+    /**
+     * 다른 대기자에게 예약된 수량(reserved)을 빼고도 재고가 충분할 때만 감소시킨다.
+     * @return 변경된 행 수. 0 이면 재고 부족이거나 없는 재고다.
+     */
+    @Modifying
+    @Query("update Stock s set s.quantity = s.quantity - :quantity, s.version = s.version + 1 "
+            + "where s.id = :id and s.quantity - :reserved >= :quantity")
+    int decreaseIfAvailable(Long id, Long quantity, Long reserved);
+
+    /**
+     * 재고가 충분하고 fenceToken 이 지금까지 쓴 토큰보다 클 때만 감소시킨다.
+     * @return 변경된 행 수. 0 이면 재고 부족이거나 더 최근 토큰으로 이미 쓰인 재고다.
+     */
+    @Modifying
+    @Query("update Stock s set s.quantity = s.quantity - :quantity, s.fenceToken = :fenceToken, s.version = s.version + 1 "
+            + "where s.id = :id and s.quantity >= :quantity and s.fenceToken < :fenceToken")
+    int decreaseIfFenced(Long id, Long quantity, Long fenceToken);
+
+    @Modifying
+    @Query("update Stock s set s.quantity = s.quantity + :quantity, s.version = s.version + 1 where s.id = :id")
+    int increase(Long id, Long quantity);
+
+    /**
+     * 재고가 충분할 때만 예약 수량으로 옮긴다.
+     * @return 변경된 행 수. 0 이면 재고 부족이거나 없는 재고다.
+     */
+    @Modifying
+    @Query("update Stock s set s.quantity = s.quantity - :quantity, s.reserved = s.reserved + :quantity, "
+            + "s.version = s.version + 1 where s.id = :id and s.quantity >= :quantity")
+    int reserveIfPossible(Long id, Long quantity);
+
+    /**
+     * 예약 수량을 확정한다. (재고에서 완전히 빠진다)
+     */
+    @Modifying
+    @Query("update Stock s set s.reserved = s.reserved - :quantity, s.version = s.version + 1 "
+            + "where s.id = :id and s.reserved >= :quantity")
+    int confirmReserved(Long id, Long quantity);
+
+    /**
+     * 예약 수량을 다시 판매 가능한 재고로 돌려놓는다.
+     */
+    @Modifying
+    @Query("update Stock s set s.quantity = s.quantity + :quantity, s.reserved = s.reserved - :quantity, "
+            + "s.version = s.version + 1 where s.id = :id and s.reserved >= :quantity")
+    int releaseReserved(Long id, Long quantity);
+
+    @Transactional(readOnly = true)
+    @Query("select s.quantity from Stock s where s.id = :id")
+    Optional<Long> findQuantityById(Long id);
+
+    @Transactional(readOnly = true)
+    Optional<StockView> findViewById(Long id);
 }
@@ -0,0 +1,32 @@
+package com.example.concurrency.repository;
+
+import com.example.concurrency.domain.ReservationStatus;
+import com.example.concurrency.domain.StockReservation;
+import java.time.Instant;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+public interface StockReservationRepository extends JpaRepository<StockReservation, Long> {
+
+    /**
+     * 현재 상태가 from 일 때만 상태를 바꾼다. 확정/취소와 만료 처리가 겹쳐도 한 쪽만 성공한다.
+     * @return 변경된 행 수
+     */
+    @Modifying
+    @Query("update StockReservation r set r.status = :to where r.id = :id and r.status = :from")
+    int transition(Long id, ReservationStatus from, ReservationStatus to);
+
+    /**
+     * 현재 상태가 from 이고 아직 만료 시각 전일 때만 상태를 바꾼다. 만료 처리가 아직 돌지 않았어도 만료된 예약은 바뀌지 않는다.
+     * @return 변경된 행 수
+     */
+    @Modifying
+    @Query("update StockReservation r set r.status = :to where r.id = :id and r.status = :from and r.expiresAt > :now")
+    int transitionBeforeExpiry(Long id, ReservationStatus from, ReservationStatus to, Instant now);
+
+    @Query("select r from StockReservation r where r.status = :status and r.expiresAt <= :now order by r.expiresAt")
+    List<StockReservation> findExpired(ReservationStatus status, Instant now, Pageable pageable);
+}
@@ -0,0 +1,44 @@
+package com.example.concurrency.repository;
+
+import com.example.concurrency.domain.StockShard;
+import java.util.Collection;
+import java.util.List;
+import javax.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+public interface StockShardRepository extends JpaRepository<StockShard, Long> {
+
+    /**
+     * 조각 하나에 재고가 충분할 때만 감소시킨다.
+     * @return 변경된 행 수. 0 이면 이 조각의 재고가 부족하다.
+     */
+    @Modifying
+    @Query("update StockShard s set s.quantity = s.quantity - :quantity "
+            + "where s.stockId = :stockId and s.shardNo = :shardNo and s.quantity >= :quantity")
+    int decreaseIfPossible(Long stockId, Integer shardNo, Long quantity);
+
+    @Modifying
+    @Query("update StockShard s set s.quantity = s.quantity + :quantity where s.stockId = :stockId and s.shardNo = :shardNo")
+    int increase(Long stockId, Integer shardNo, Long quantity);
+
+    /**
+     * 조각 전체를 shardNo 순서로 잠근다. 항상 같은 순서로 잠그므로 서로 교착되지 않는다.
+     */
+    @Lock(value = LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from StockShard s where s.stockId = :stockId order by s.shardNo")
+    List<StockShard> findAllByStockIdWithPessimisticLock(Long stockId);
+
+    @Query("select coalesce(sum(s.quantity), 0) from StockShard s where s.stockId = :stockId")
+    Long sumQuantityByStockId(Long stockId);
+
+    int countByStockId(Long stockId);
+
+    @Query("select distinct s.stockId from StockShard s")
+    List<Long> findShardedStockIds();
+
+    @Query("select distinct s.stockId from StockShard s where s.stockId in :stockIds")
+    List<Long> findShardedStockIds(Collection<Long> stockIds);
+}
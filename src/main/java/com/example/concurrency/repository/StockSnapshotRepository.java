@@ -0,0 +1,7 @@
+package com.example.concurrency.repository;
+
+import com.example.concurrency.domain.StockSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface StockSnapshotRepository extends JpaRepository<StockSnapshot, Long> {
+}
@@ -0,0 +1,15 @@
+package com.example.concurrency.repository;
+
+/**
+ * 재고 조회용 projection. 필요한 컬럼만 읽고, 엔티티가 아니라서 영속성 컨텍스트에 올라가지 않는다. (변경 감지 스냅샷 없음)
+ */
+public interface StockView {
+
+    Long getId();
+
+    Long getQuantity();
+
+    Long getReserved();
+
+    Long getFenceToken();
+}
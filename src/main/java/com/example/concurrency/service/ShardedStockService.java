@@ -0,0 +1,202 @@
+package com.example.concurrency.service;
+
+import com.example.concurrency.domain.InsufficientStockException;
+import com.example.concurrency.domain.Stock;
+import com.example.concurrency.domain.StockChangedEvent;
+import com.example.concurrency.domain.StockShard;
+import com.example.concurrency.repository.StockRepository;
+import com.example.concurrency.repository.StockShardRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 한 재고의 수량을 K 개의 조각(StockShard)으로 나눠서 감소시킨다.
+ * 감소는 임의의 조각 하나에서 조건부 UPDATE 로 처리하고, 그 조각이 부족하면 다음 조각으로 넘어간다.
+ * 조각마다 다른 행을 잠그므로 한 상품의 처리량이 조각 수에 비례해서 늘어난다.
+ * <p>
+ * 분할한 재고의 stock 행 수량은 0 으로 남는다. 감소/증가는 {@link com.example.concurrency.strategy.StockLockRouter} 가,
+ * 대량 입고는 {@link StockBulkService} 가 이 서비스로 보내고, 재고 조회는 stock 행과 조각 합계를 더해서 읽는다.
+ */
+@Service
+public class ShardedStockService {
+
+    private final StockRepository stockRepository;
+
+    private final StockShardRepository stockShardRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    // 조각 수는 분할한 뒤에는 바뀌지 않는다. 분할하지 않은 재고는 0 으로 두고, 다른 노드에서 분할한 재고는 TTL 뒤에 알게 된다.
+    private final Cache<Long, Integer> shardCounts;
+
+    // 전체 수량은 조각 합계라서 매번 읽지 않고 잠깐 캐시한다. (TTL 만큼 늦게 반영될 수 있다)
+    private final Cache<Long, Long> quantities;
+
+    public ShardedStockService(StockRepository stockRepository,
+                               StockShardRepository stockShardRepository,
+                               TransactionTemplate transactionTemplate,
+                               ApplicationEventPublisher eventPublisher,
+                               @Value("${stock.shard.aggregate-ttl:1s}") Duration aggregateTtl) {
+        this.stockRepository = stockRepository;
+        this.stockShardRepository = stockShardRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.shardCounts = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(aggregateTtl)
+                .build();
+        this.quantities = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(aggregateTtl)
+                .build();
+    }
+
+    /**
+     * 재고 수량을 shardCount 개의 조각으로 옮긴다. 나누어 떨어지지 않는 나머지는 앞 조각부터 하나씩 더 가진다.
+     */
+    @Transactional
+    public void split(Long stockId, int shardCount) {
+        if (stockShardRepository.countByStockId(stockId) > 0) {
+            throw new IllegalStateException("이미 분할된 재고입니다. id=" + stockId);
+        }
+
+        Stock stock = stockRepository.findByIdWithPessimisticLock(stockId);
+        long total = stock.getQuantity();
+
+        for (int shardNo = 0; shardNo < shardCount; shardNo++) {
+            stockShardRepository.save(new StockShard(stockId, shardNo, share(total, shardCount, shardNo)));
+        }
+
+        stock.decrease(total);
+        stockRepository.saveAndFlush(stock);
+
+        shardCounts.put(stockId, shardCount);
+        quantities.invalidate(stockId);
+    }
+
+    public boolean isSharded(Long stockId) {
+        return shardCounts.get(stockId, stockShardRepository::countByStockId) > 0;
+    }
+
+    public void decrease(Long stockId, Long quantity) {
+        int shardCount = getShardCount(stockId);
+        int start = ThreadLocalRandom.current().nextInt(shardCount);
+
+        for (int i = 0; i < shardCount; i++) {
+            int shardNo = (start + i) % shardCount;
+            Integer updated = transactionTemplate.execute(status -> {
+                if (stockShardRepository.decreaseIfPossible(stockId, shardNo, quantity) == 0) {
+                    return 0;
+                }
+                eventPublisher.publishEvent(new StockChangedEvent(stockId));
+                return 1;
+            });
+            if (updated == 1) {
+                return;
+            }
+        }
+
+        // 어느 조각 하나로도 부족하면 조각 전체를 잠그고 여러 조각에서 나눠서 뺀다.
+        transactionTemplate.executeWithoutResult(status -> decreaseAcrossShards(stockId, quantity));
+    }
+
+    /**
+     * 입고 수량을 조각마다 고르게 나눠 더한다. 조각마다 증가 UPDATE 하나이고 잠금 순서는 shardNo 순서다.
+     */
+    public void increase(Long stockId, Long quantity) {
+        int shardCount = getShardCount(stockId);
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int shardNo = 0; shardNo < shardCount; shardNo++) {
+                long share = share(quantity, shardCount, shardNo);
+                if (share > 0 && stockShardRepository.increase(stockId, shardNo, share) == 0) {
+                    throw new NoSuchElementException("stock shard not found: " + stockId + "/" + shardNo);
+                }
+            }
+            eventPublisher.publishEvent(new StockChangedEvent(stockId));
+        });
+        quantities.invalidate(stockId);
+    }
+
+    public Long getQuantity(Long stockId) {
+        return quantities.get(stockId, stockShardRepository::sumQuantityByStockId);
+    }
+
+    /**
+     * 한쪽 조각이 비어서 감소가 다른 조각으로 몰리지 않도록 수량을 고르게 다시 나눈다.
+     * @return 다시 나눴으면 true
+     */
+    public boolean rebalance(Long stockId) {
+        return transactionTemplate.execute(status -> {
+            List<StockShard> shards = stockShardRepository.findAllByStockIdWithPessimisticLock(stockId);
+            long total = shards.stream().mapToLong(StockShard::getQuantity).sum();
+
+            if (isBalanced(shards, total)) {
+                return false;
+            }
+
+            for (StockShard shard : shards) {
+                shard.setQuantity(share(total, shards.size(), shard.getShardNo()));
+            }
+            stockShardRepository.saveAll(shards);
+            return true;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${stock.shard.rebalance-interval-millis:1000}")
+    public void rebalanceAll() {
+        stockShardRepository.findShardedStockIds().forEach(this::rebalance);
+    }
+
+    private void decreaseAcrossShards(Long stockId, Long quantity) {
+        List<StockShard> shards = stockShardRepository.findAllByStockIdWithPessimisticLock(stockId);
+        long total = shards.stream().mapToLong(StockShard::getQuantity).sum();
+
+        if (total < quantity) {
+            throw new InsufficientStockException(total, quantity);
+        }
+
+        long remaining = quantity;
+        for (StockShard shard : shards) {
+            long taken = Math.min(shard.getQuantity(), remaining);
+            shard.setQuantity(shard.getQuantity() - taken);
+            remaining -= taken;
+        }
+        stockShardRepository.saveAll(shards);
+        eventPublisher.publishEvent(new StockChangedEvent(stockId));
+    }
+
+    private int getShardCount(Long stockId) {
+        int shardCount = shardCounts.get(stockId, stockShardRepository::countByStockId);
+        if (shardCount == 0) {
+            // 다른 노드에서 방금 분할했을 수 있으므로 다음에는 다시 센다.
+            shardCounts.invalidate(stockId);
+            throw new IllegalStateException("분할되지 않은 재고입니다. id=" + stockId);
+        }
+        return shardCount;
+    }
+
+    /*
+    가장 적은 조각이 고른 몫의 절반 이상을 가지고 있으면 그대로 둔다.
+    조금의 치우침마다 다시 나누면 재분배가 모든 조각을 잠그는 일이 잦아진다.
+     */
+    private static boolean isBalanced(List<StockShard> shards, long total) {
+        long min = shards.stream().mapToLong(StockShard::getQuantity).min().orElse(0L);
+        return min * 2 >= total / shards.size();
+    }
+
+    private static long share(long total, int shardCount, int shardNo) {
+        return total / shardCount + (shardNo < total % shardCount ? 1 : 0);
+    }
+}
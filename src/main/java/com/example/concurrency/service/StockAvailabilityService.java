@@ -0,0 +1,78 @@
+package com.example.concurrency.service;
+
+import com.example.concurrency.domain.StockChangedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * 상품 페이지용 재고 조회. 수량만 로컬 캐시에 두고, 캐시에 있으면 락도 DB 커넥션도 쓰지 않는다.
+ * <p>
+ * 쓰기 쪽이 {@link StockChangedEvent} 를 발행하면 커밋 뒤에 캐시에서 지운다. 여러 노드일 때는 Redis 채널로 다른 노드에도 알린다.
+ * 지우기와 다시 읽기가 겹치면 이전 값이 남을 수 있지만, max-staleness 가 지나면 항상 다시 읽는다.
+ */
+@Service
+public class StockAvailabilityService {
+
+    public static final String CHANGED_CHANNEL = "stock:changed";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final boolean redisInvalidation;
+
+    private final Cache<Long, Long> quantities;
+
+    public StockAvailabilityService(JdbcTemplate jdbcTemplate,
+                                    StringRedisTemplate redisTemplate,
+                                    @Value("${stock.availability.maximum-size:100000}") long maximumSize,
+                                    @Value("${stock.availability.max-staleness:1s}") Duration maxStaleness,
+                                    @Value("${stock.availability.redis-invalidation:false}") boolean redisInvalidation) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.redisTemplate = redisTemplate;
+        this.redisInvalidation = redisInvalidation;
+        this.quantities = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(maxStaleness)
+                .build();
+    }
+
+    /**
+     * 같은 재고를 동시에 못 찾으면 한 쓰레드만 DB 에서 읽는다.
+     * @throws NoSuchElementException 없는 재고
+     */
+    public Long getAvailableQuantity(Long id) {
+        return quantities.get(id, this::load);
+    }
+
+    public void invalidate(Long id) {
+        quantities.invalidate(id);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockChanged(StockChangedEvent event) {
+        invalidate(event.getStockId());
+        if (redisInvalidation) {
+            redisTemplate.convertAndSend(CHANGED_CHANNEL, event.getStockId().toString());
+        }
+    }
+
+    // 엔티티를 읽지 않고 수량만 읽는다. 잠금 없는 일반 SELECT 라 쓰기 쪽의 행 잠금이나 네임드 락을 기다리지 않는다.
+    // 조각으로 나눈 재고는 stock 행 수량이 0 이고 조각에 나뉘어 있으므로 둘을 더한다.
+    private Long load(Long id) {
+        List<Long> loaded = jdbcTemplate.queryForList("select s.quantity + coalesce("
+                + "(select sum(h.quantity) from stock_shard h where h.stock_id = s.id), 0) from stock s where s.id = ?", Long.class, id);
+        if (loaded.isEmpty()) {
+            throw new NoSuchElementException("stock not found: " + id);
+        }
+        return loaded.get(0);
+    }
+}
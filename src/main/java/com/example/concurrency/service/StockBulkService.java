@@ -0,0 +1,124 @@
+package com.example.concurrency.service;
+
+import com.example.concurrency.domain.Stock;
+import com.example.concurrency.domain.StockChangedEvent;
+import com.example.concurrency.repository.StockShardRepository;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import javax.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 대량 등록/입고. batch-size 건마다 트랜잭션 하나로 처리한다.
+ * 등록은 hibernate.jdbc.batch_size 로 INSERT 배치에 묶고 flush/clear 해서 영속성 컨텍스트가 배치 크기 이상 커지지 않는다.
+ * 입고는 엔티티를 읽지 않고 증가분만 JDBC 배치로 쓴다. 중간에 실패하면 이전 배치까지는 반영되어 있다.
+ */
+@Service
+public class StockBulkService {
+
+    private static final String INCREASE = "update stock set quantity = quantity + ?, version = version + 1 where id = ?";
+
+    private final EntityManager entityManager;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final StockShardRepository stockShardRepository;
+
+    private final ShardedStockService shardedStockService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final int batchSize;
+
+    public StockBulkService(EntityManager entityManager,
+                            JdbcTemplate jdbcTemplate,
+                            StockShardRepository stockShardRepository,
+                            ShardedStockService shardedStockService,
+                            TransactionTemplate transactionTemplate,
+                            ApplicationEventPublisher eventPublisher,
+                            @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:500}") int batchSize) {
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+        this.stockShardRepository = stockShardRepository;
+        this.shardedStockService = shardedStockService;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * id 는 시퀀스에서 allocationSize 만큼 미리 받아 두므로 INSERT 마다 id 를 조회하지 않는다.
+     * @return 등록한 재고 수
+     */
+    public int importStocks(List<Stock> stocks) {
+        for (int from = 0; from < stocks.size(); from += batchSize) {
+            List<Stock> batch = stocks.subList(from, Math.min(from + batchSize, stocks.size()));
+            transactionTemplate.executeWithoutResult(status -> {
+                batch.forEach(entityManager::persist);
+                entityManager.flush();
+                entityManager.clear();
+            });
+        }
+        return stocks.size();
+    }
+
+    /**
+     * 재고 id 순서로 증가분만 UPDATE 한다. 배치마다 UPDATE 배치 한 번이고, 읽지 않으므로 동시에 들어온 감소와 버전 충돌이 없다.
+     * 커밋된 뒤에 발행되는 {@link StockChangedEvent} 로 입고를 기다리던 요청이 깨어난다.
+     * 조각으로 나눈 재고는 {@link ShardedStockService#increase(Long, Long)} 로 조각에 나눠 더한다.
+     * @param quantities 재고 id 별 입고 수량
+     * @return 입고한 재고 수. 없는 재고는 건너뛴다.
+     */
+    public int restock(Map<Long, Long> quantities) {
+        SortedMap<Long, Long> sorted = new TreeMap<>(quantities);
+        List<Long> ids = new ArrayList<>(sorted.keySet());
+        int restocked = 0;
+
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<Long> chunk = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            Set<Long> sharded = new HashSet<>(stockShardRepository.findShardedStockIds(chunk));
+            List<Long> batch = new ArrayList<>(chunk.size());
+            for (Long id : chunk) {
+                if (sharded.contains(id)) {
+                    shardedStockService.increase(id, sorted.get(id));
+                    restocked++;
+                } else {
+                    batch.add(id);
+                }
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+
+            restocked += transactionTemplate.execute(status -> {
+                List<Object[]> args = new ArrayList<>(batch.size());
+                for (Long id : batch) {
+                    args.add(new Object[]{sorted.get(id), id});
+                }
+
+                int[] rows = jdbcTemplate.batchUpdate(INCREASE, args);
+                int updated = 0;
+                for (int i = 0; i < rows.length; i++) {
+                    // 드라이버가 배치를 한 문장으로 바꾸면 행 수 대신 SUCCESS_NO_INFO(-2) 를 준다.
+                    if (rows[i] != 0) {
+                        eventPublisher.publishEvent(new StockChangedEvent(batch.get(i)));
+                        updated++;
+                    }
+                }
+                return updated;
+            });
+        }
+        return restocked;
+    }
+}
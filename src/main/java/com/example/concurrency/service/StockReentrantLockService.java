@@ -1,97 +1,200 @@
 package com.example.concurrency.service;
 
-import com.example.concurrency.domain.Stock;
+import com.example.concurrency.domain.InsufficientStockException;
+import com.example.concurrency.domain.StockChangedEvent;
+import com.example.concurrency.lock.StockLock;
+import com.example.concurrency.lock.StockLockEvent;
+import com.example.concurrency.lock.StockLockRegistry;
+import com.example.concurrency.metrics.StockLockMeters;
+import com.example.concurrency.metrics.StockMetrics;
 import com.example.concurrency.repository.StockRepository;
-import lombok.extern.slf4j.Slf4j;
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import javax.persistence.EntityManager;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
-
-@Slf4j
 @Service
 public class StockReentrantLockService {
+
+    private static final String STRATEGY = "reentrant-lock";
+
     private final StockRepository stockRepository;
-//    private final Map<Long, ReentrantLock> stockReentrantLockMap = new HashMap<>();
-//    private final Map<Long, Condition> stockConditionMap = new HashMap<>();
-    private final ReentrantLock lock = new ReentrantLock();
-    private final Condition condition = lock.newCondition(); // lock 조건 설정 가능
 
-    private final EntityManager entityManager;
+    // 재고 id 별로 ReentrantLock 과 Condition 을 따로 가진다. (1번 상품 감소가 2번 상품 감소를 막지 않음)
+    private final StockLockRegistry stockLockRegistry;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ApplicationEventPublisher eventPublisher;
 
-    public StockReentrantLockService(StockRepository stockRepository, EntityManager entityManager) {
+    private final StockLockMeters meters;
+
+    private final Duration restockTimeout;
+
+    public StockReentrantLockService(StockRepository stockRepository, StockLockRegistry stockLockRegistry,
+                                     TransactionTemplate transactionTemplate, ApplicationEventPublisher eventPublisher,
+                                     StockMetrics stockMetrics, @Value("${stock.restock-wait.timeout:30s}") Duration restockTimeout) {
         this.stockRepository = stockRepository;
-        this.entityManager = entityManager;
+        this.stockLockRegistry = stockLockRegistry;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.meters = stockMetrics.lock(STRATEGY);
+        this.restockTimeout = restockTimeout;
     }
 
-    @Transactional
+    /*
+    트랜잭션은 락 안에서 시작하고 락 안에서 커밋한다.
+    메서드 전체에 @Transactional 을 걸면 커밋이 unlock 이후에 일어나서, 깨어난 쓰레드가 커밋 전 값을 읽거나
+    1차 캐시에 남은 이전 값을 읽는 문제가 있었다. (그래서 entityManager.refresh 가 필요했음)
+    재고 확인마다 새 트랜잭션을 쓰면 항상 커밋된 최신 값을 읽는다.
+     */
     public void decreaseProcess(Long id, Long quantity) {
-        lock.lock();
+        decreaseProcess(id, quantity, restockTimeout);
+    }
+
+    /**
+     * 재고가 모자라면 대기열에 서서 재고가 들어오기를 기다린다.
+     * @throws InsufficientStockException timeout 안에 재고가 들어오지 않은 경우
+     */
+    public void decreaseProcess(Long id, Long quantity, Duration timeout) {
+        StockLock stockLock = stockLockRegistry.acquire(id);
+        long deadline = System.nanoTime() + timeout.toNanos();
         try {
-            log.info("{}, Lock 획득, templateId={}", Thread.currentThread().getName(), id);
-            Stock stock = stockRepository.findById(id).orElseThrow();
-            log.info("재고: {}", stock.getQuantity());
-            while (!stock.isPossibleDecrease(quantity)) {
-                log.info("{}, 재고 없어...{}, Lock 반납, 대기표 뽑음, templateId={}", Thread.currentThread().getName(), stock.getQuantity(), id);
-                condition.await();
-                log.info("{}, 시그널 받음, 대기표 반납, templateId={}", Thread.currentThread().getName(), id);
-                /*
-                문제상황: 다른 트랜잭션에서 업데이트 한 값이 1차 캐시에 남아있어서 새로 업데이트가 안되는 중. 그래서 while문을 계속 통과를 못함.
-                (synchronized 에서는 객체의 데이터가 바뀌면 기다리던 스레드에도 flush를 해줬는데... 이건 안해주는것 같음...)
-                 */
-                entityManager.refresh(stock);
-                stock = stockRepository.findById(id).orElseThrow();
-            }
-            log.info("{}, templateId={}, 재고 감소={}-{}", Thread.currentThread().getName(), id, stock.getQuantity(), quantity);
-            stock.decrease(quantity);
+            StockLock.Waiter waiter = null;
+            while (true) {
+                long acquired = lock(stockLock, id);
+                try {
+                    if (waiter != null) {
+                        stockLock.consume(waiter);
+                    }
+                    // 다른 대기자에게 예약된 수량은 건드리지 않는다.
+                    if (tryDecrease(id, quantity, stockLock.getReserved())) {
+                        return;
+                    }
+                    if (deadline - System.nanoTime() <= 0) {
+                        throw new InsufficientStockException(quantity);
+                    }
+                    waiter = stockLock.enqueue(quantity);
+                } finally {
+                    meters.recordHold(id, System.nanoTime() - acquired);
+                    stockLock.unlock();
+                }
 
-            stockRepository.save(stock);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+                awaitRestock(stockLock, waiter, id, quantity, deadline);
+            }
         } finally {
-            lock.unlock();
-            log.info("{}, Lock 해제 완료", Thread.currentThread().getName());
+            stockLockRegistry.release(stockLock);
         }
     }
 
-    @Transactional
     public void increaseProcess(Long id, Long quantity) {
-        lock.lock();
+        StockLock stockLock = stockLockRegistry.acquire(id);
+        long acquired = lock(stockLock, id);
+        try {
+            Long increased = transactionTemplate.execute(status -> {
+                if (stockRepository.increase(id, quantity) == 0) {
+                    throw new NoSuchElementException("stock not found: " + id);
+                }
+                eventPublisher.publishEvent(new StockChangedEvent(id, this));
+                return stockRepository.findQuantityById(id).orElseThrow();
+            });
+
+            // 늘어난 재고에 들어가는 대기자만 도착 순서대로 깨운다.
+            if (stockLock.signalAvailable(increased) > 0) {
+                StockLockEvent.instant(STRATEGY, StockLockEvent.SIGNAL, id);
+            }
+        } finally {
+            meters.recordHold(id, System.nanoTime() - acquired);
+            stockLock.unlock();
+            stockLockRegistry.release(stockLock);
+        }
+    }
+
+    /**
+     * 락 서비스가 아닌 경로(StockService, 예약 취소, 대량 입고 등)에서 늘린 재고로 대기자를 깨운다.
+     * 기다리는 대기자가 없으면 DB 를 읽지 않는다.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockChanged(StockChangedEvent event) {
+        if (event.getOrigin() != null) {
+            return;
+        }
+        Long id = event.getStockId();
+        StockLock stockLock = stockLockRegistry.acquire(id);
+        stockLock.lock();
         try {
-            log.info("{}, Lock 획득, templateId={}", Thread.currentThread().getName(), id);
-            Stock stock = stockRepository.findById(id).orElseThrow();
+            if (stockLock.getWaiterCount() > 0) {
+                Long quantity = stockRepository.findQuantityById(id).orElse(0L);
+                if (stockLock.signalAvailable(quantity) > 0) {
+                    StockLockEvent.instant(STRATEGY, StockLockEvent.SIGNAL, id);
+                }
+            }
+        } finally {
+            stockLock.unlock();
+            stockLockRegistry.release(stockLock);
+        }
+    }
 
-            log.info("재고: {}", stock.getQuantity());
-            log.info("{}, templateId={}, 재고 증가={}+{}", Thread.currentThread().getName(), id, stock.getQuantity(), quantity);
-            stock.increase(quantity);
+    /*
+    락 안에서는 로그를 남기지 않는다. 추적이 필요하면 JFR 기록을 켜서 StockLockEvent 를 본다.
+     */
+    private long lock(StockLock stockLock, Long id) {
+        long start = System.nanoTime();
+        StockLockEvent acquire = StockLockEvent.begin(STRATEGY, StockLockEvent.ACQUIRE, id);
+        stockLock.lock();
+        acquire.commit();
+        long acquired = System.nanoTime();
+        meters.recordWait(id, acquired - start);
+        return acquired;
+    }
 
-            stockRepository.save(stock);
+    /*
+    시간이 지나거나 인터럽트되면 대기열에서 빠진다. 그 사이에 깨워졌다면 받은 예약으로 한 번 더 시도한다.
+     */
+    private void awaitRestock(StockLock stockLock, StockLock.Waiter waiter, Long id, Long quantity, long deadline) {
+        StockLockEvent wait = StockLockEvent.begin(STRATEGY, StockLockEvent.WAIT, id);
+        try {
+            boolean granted = waiter.await(deadline - System.nanoTime());
+            wait.commit();
+            if (granted) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            stockLock.lock();
+            try {
+                stockLock.cancel(waiter);
+            } finally {
+                stockLock.unlock();
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
 
-            log.info("{}, Lock 반납예정 시그널!, templateId={}", Thread.currentThread().getName(), id);
-            condition.signal();
+        stockLock.lock();
+        try {
+            if (waiter.isGranted()) {
+                return;
+            }
+            stockLock.cancel(waiter);
         } finally {
-            lock.unlock();
-            log.info("{}, Lock 해제 완료", Thread.currentThread().getName());
+            stockLock.unlock();
         }
+        throw new InsufficientStockException(quantity);
     }
 
-//    private ReentrantLock getStockLock(Long id) {
-//        synchronized (stockReentrantLockMap) {
-//            ReentrantLock reentrantLock = new ReentrantLock();
-//            // condition 생성
-//            stockConditionMap.computeIfAbsent(id, templateId -> reentrantLock.newCondition());
-//            return stockReentrantLockMap.computeIfAbsent(id, templateId -> new ReentrantLock());
-//        }
-//    }
-//
-//    private Condition getCondition(Long id) {
-//        synchronized (stockConditionMap) {
-//            return stockConditionMap.get(id);
-//        }
-//    }
+    /*
+    확인과 감소를 조건부 UPDATE 한 문장으로 한다. 깨어날 때마다 엔티티를 읽어 스냅샷을 만들지 않는다.
+     */
+    private boolean tryDecrease(Long id, Long quantity, long reserved) {
+        return transactionTemplate.execute(status -> {
+            if (stockRepository.decreaseIfAvailable(id, quantity, reserved) == 0) {
+                return false;
+            }
+            eventPublisher.publishEvent(new StockChangedEvent(id, this));
+            return true;
+        });
+    }
 }
@@ -0,0 +1,131 @@
+package com.example.concurrency.service;
+
+import com.example.concurrency.domain.InsufficientStockException;
+import com.example.concurrency.domain.ReservationStatus;
+import com.example.concurrency.domain.StockChangedEvent;
+import com.example.concurrency.domain.StockReservation;
+import com.example.concurrency.repository.StockRepository;
+import com.example.concurrency.repository.StockReservationRepository;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 2단계 재고 차감. reserve 로 수량을 예약 버킷에 옮겨두고, 결제 결과에 따라 confirm/cancel 한다.
+ * 각 단계는 조건부 UPDATE 한 문장이라 결제가 진행되는 동안 재고 행 잠금을 잡고 있지 않는다.
+ */
+@Service
+public class StockReservationService {
+
+    private final StockRepository stockRepository;
+
+    private final StockReservationRepository reservationRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final int sweepBatchSize;
+
+    public StockReservationService(StockRepository stockRepository,
+                                   StockReservationRepository reservationRepository,
+                                   TransactionTemplate transactionTemplate,
+                                   ApplicationEventPublisher eventPublisher,
+                                   @Value("${stock.reservation.sweep-batch-size:500}") int sweepBatchSize) {
+        this.stockRepository = stockRepository;
+        this.reservationRepository = reservationRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.sweepBatchSize = sweepBatchSize;
+    }
+
+    /**
+     * @return 예약 id
+     */
+    @Transactional
+    public Long reserve(Long stockId, Long quantity, Duration ttl) {
+        if (stockRepository.reserveIfPossible(stockId, quantity) == 0) {
+            Long current = stockRepository.findQuantityById(stockId).orElseThrow(RuntimeException::new);
+            throw new InsufficientStockException(current, quantity);
+        }
+        eventPublisher.publishEvent(new StockChangedEvent(stockId));
+
+        return reservationRepository.save(new StockReservation(stockId, quantity, Instant.now().plus(ttl))).getId();
+    }
+
+    /**
+     * 만료 시각이 지난 예약은 만료 처리 전이라도 확정하지 않는다. (곧 재고로 돌아갈 수량이라 확정하면 이중 판매가 된다)
+     */
+    @Transactional
+    public void confirm(Long reservationId) {
+        StockReservation reservation = reservationRepository.findById(reservationId).orElseThrow(RuntimeException::new);
+
+        if (reservationRepository.transitionBeforeExpiry(reservationId, ReservationStatus.RESERVED,
+                ReservationStatus.CONFIRMED, Instant.now()) == 0) {
+            throw new IllegalStateException("이미 처리되었거나 만료된 예약입니다. id=" + reservationId);
+        }
+        stockRepository.confirmReserved(reservation.getStockId(), reservation.getQuantity());
+    }
+
+    @Transactional
+    public void cancel(Long reservationId) {
+        StockReservation reservation = finish(reservationId, ReservationStatus.CANCELLED);
+        stockRepository.releaseReserved(reservation.getStockId(), reservation.getQuantity());
+        eventPublisher.publishEvent(new StockChangedEvent(reservation.getStockId()));
+    }
+
+    /**
+     * 만료된 예약을 배치 단위로 풀어준다. 배치마다 재고별로 합쳐서 UPDATE 한 번씩만 한다.
+     * @return 만료 처리한 예약 수
+     */
+    @Scheduled(fixedDelayString = "${stock.reservation.sweep-interval-millis:1000}")
+    public int expire() {
+        int expired = 0;
+        int swept;
+
+        do {
+            swept = transactionTemplate.execute(status -> expireBatch(Instant.now()));
+            expired += swept;
+        } while (swept == sweepBatchSize);
+
+        return expired;
+    }
+
+    private int expireBatch(Instant now) {
+        List<StockReservation> reservations = reservationRepository.findExpired(
+                ReservationStatus.RESERVED, now, PageRequest.of(0, sweepBatchSize));
+        Map<Long, Long> released = new HashMap<>();
+
+        for (StockReservation reservation : reservations) {
+            // 그 사이 확정/취소된 예약은 건너뛴다.
+            if (reservationRepository.transition(reservation.getId(), ReservationStatus.RESERVED, ReservationStatus.EXPIRED) == 1) {
+                released.merge(reservation.getStockId(), reservation.getQuantity(), Long::sum);
+            }
+        }
+
+        released.forEach((stockId, quantity) -> {
+            stockRepository.releaseReserved(stockId, quantity);
+            eventPublisher.publishEvent(new StockChangedEvent(stockId));
+        });
+        return reservations.size();
+    }
+
+    private StockReservation finish(Long reservationId, ReservationStatus to) {
+        StockReservation reservation = reservationRepository.findById(reservationId).orElseThrow(RuntimeException::new);
+
+        if (reservationRepository.transition(reservationId, ReservationStatus.RESERVED, to) == 0) {
+            throw new IllegalStateException("이미 처리되었거나 만료된 예약입니다. id=" + reservationId);
+        }
+
+        return reservation;
+    }
+}
@@ -1,7 +1,23 @@
 package com.example.concurrency.service;
 
+import com.example.concurrency.domain.InsufficientStockException;
 import com.example.concurrency.domain.Stock;
+import com.example.concurrency.domain.StockChangedEvent;
+import com.example.concurrency.lock.StaleFenceTokenException;
+import com.example.concurrency.metrics.StockLockMeters;
+import com.example.concurrency.metrics.StockMetrics;
 import com.example.concurrency.repository.StockRepository;
+import com.example.concurrency.repository.StockView;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
@@ -11,8 +27,18 @@ public class StockService {
 
     private final StockRepository stockRepository;
 
-    public StockService(StockRepository stockRepository) {
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final StockLockMeters pessimisticMeters;
+
+    public StockService(StockRepository stockRepository, JdbcTemplate jdbcTemplate,
+                        ApplicationEventPublisher eventPublisher, StockMetrics stockMetrics) {
         this.stockRepository = stockRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.pessimisticMeters = stockMetrics.lock("pessimistic");
     }
 
     @Transactional(propagation = Propagation.REQUIRES_NEW) // 새로운 트랜잭션 생성
@@ -23,16 +49,21 @@ public class StockService {
         stock.decrease(quantity);
 
         stockRepository.saveAndFlush(stock);
+        eventPublisher.publishEvent(new StockChangedEvent(id));
     }
 
 
+    // 행 잠금은 커밋 때 풀리므로 메서드 안에서는 잠금 대기 시간만 잴 수 있다.
     @Transactional
     public void decreaseWithPessimisticLock(Long id, Long quantity) {
+        long start = System.nanoTime();
         Stock stock = stockRepository.findByIdWithPessimisticLock(id);
+        pessimisticMeters.recordWait(id, System.nanoTime() - start);
 
         stock.decrease(quantity);
 
         stockRepository.saveAndFlush(stock);
+        eventPublisher.publishEvent(new StockChangedEvent(id));
     }
 
     @Transactional
@@ -42,5 +73,103 @@ public class StockService {
         stock.decrease(quantity);
 
         stockRepository.saveAndFlush(stock);
+        eventPublisher.publishEvent(new StockChangedEvent(id));
+    }
+
+    /**
+     * 한 재고에 대한 여러 감소 요청을 하나의 트랜잭션에서 순서대로 처리한다.
+     * 재고가 부족한 요청은 건너뛰고, 요청별 성공 여부를 같은 순서로 돌려준다.
+     */
+    @Transactional
+    public boolean[] decreaseInOrder(Long id, List<Long> quantities) {
+        Stock stock = stockRepository.findByIdWithPessimisticLock(id);
+        boolean[] results = new boolean[quantities.size()];
+
+        for (int i = 0; i < quantities.size(); i++) {
+            Long quantity = quantities.get(i);
+            if (stock.isPossibleDecrease(quantity)) {
+                stock.decrease(quantity);
+                results[i] = true;
+            }
+        }
+
+        stockRepository.saveAndFlush(stock);
+        eventPublisher.publishEvent(new StockChangedEvent(id));
+        return results;
+    }
+
+    /**
+     * 조건부 UPDATE 한 문장으로 감소시킨다. SELECT 와 변경 감지가 없고, 행 잠금은 UPDATE 문 안에서만 잡힌다.
+     */
+    @Transactional
+    public void decreaseWithConditionalUpdate(Long id, Long quantity) {
+        if (stockRepository.decreaseIfPossible(id, quantity) == 0) {
+            Long current = stockRepository.findQuantityById(id).orElseThrow(RuntimeException::new);
+            throw new InsufficientStockException(current, quantity);
+        }
+        eventPublisher.publishEvent(new StockChangedEvent(id));
+    }
+
+    /**
+     * 분산 락을 잡은 쪽이 쓴다. 더 큰 토큰으로 이미 쓰인 재고는 바꾸지 않으므로,
+     * lease 가 끝난 뒤에 늦게 도착한 이전 소유자의 쓰기는 반영되지 않는다.
+     * @throws StaleFenceTokenException 더 최근 토큰으로 쓰인 재고
+     */
+    @Transactional
+    public void decreaseWithFence(Long id, Long quantity, long fenceToken) {
+        if (stockRepository.decreaseIfFenced(id, quantity, fenceToken) == 0) {
+            StockView stock = stockRepository.findViewById(id).orElseThrow(RuntimeException::new);
+            if (stock.getFenceToken() >= fenceToken) {
+                throw new StaleFenceTokenException(id, fenceToken, stock.getFenceToken());
+            }
+            throw new InsufficientStockException(stock.getQuantity(), quantity);
+        }
+        eventPublisher.publishEvent(new StockChangedEvent(id));
+    }
+
+    @Transactional
+    public void increase(Long id, Long quantity) {
+        if (stockRepository.increase(id, quantity) == 0) {
+            throw new NoSuchElementException("stock not found: " + id);
+        }
+        eventPublisher.publishEvent(new StockChangedEvent(id));
+    }
+
+    /**
+     * 주문 하나의 여러 재고를 한 트랜잭션에서 모두 감소시킨다. 하나라도 부족하면 전부 롤백된다.
+     * 잠금은 id 순서의 SELECT ... FOR UPDATE 한 번, 변경은 JDBC 배치 한 번이라 품목 수가 늘어도 왕복 횟수는 같다.
+     * @param quantities 재고 id 별 감소 수량
+     * @throws IllegalArgumentException 감소 수량이 1 보다 작은 품목이 있을 때 (잠그기 전에 확인한다)
+     * @throws NoSuchElementException 존재하지 않는 재고가 있을 때
+     */
+    @Transactional
+    public void decreaseAll(Map<Long, Long> quantities) {
+        quantities.forEach((id, quantity) -> {
+            if (quantity == null || quantity <= 0) {
+                throw new IllegalArgumentException("quantity 는 1 이상이어야 합니다. id=" + id);
+            }
+        });
+
+        SortedMap<Long, Long> sorted = new TreeMap<>(quantities);
+        List<Stock> stocks = stockRepository.findAllByIdWithPessimisticLock(sorted.keySet());
+
+        if (stocks.size() != sorted.size()) {
+            Set<Long> missing = new TreeSet<>(sorted.keySet());
+            stocks.forEach(stock -> missing.remove(stock.getId()));
+            throw new NoSuchElementException("stock not found: " + missing);
+        }
+
+        List<Object[]> args = new ArrayList<>(stocks.size());
+        for (Stock stock : stocks) {
+            Long quantity = sorted.get(stock.getId());
+            if (!stock.isPossibleDecrease(quantity)) {
+                throw new InsufficientStockException(stock.getQuantity(), quantity);
+            }
+            args.add(new Object[]{quantity, stock.getId()});
+        }
+
+        // 엔티티는 잠금과 확인에만 쓰고 변경하지 않는다. (변경 감지로 UPDATE 가 한 번 더 나가지 않도록)
+        jdbcTemplate.batchUpdate("update stock set quantity = quantity - ?, version = version + 1 where id = ?", args);
+        sorted.keySet().forEach(id -> eventPublisher.publishEvent(new StockChangedEvent(id)));
     }
 }
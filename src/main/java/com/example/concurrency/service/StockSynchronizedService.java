@@ -1,67 +1,228 @@
 package com.example.concurrency.service;
 
-import com.example.concurrency.domain.Stock;
+import com.example.concurrency.cache.StockCache;
+import com.example.concurrency.domain.InsufficientStockException;
+import com.example.concurrency.domain.StockChangedEvent;
+import com.example.concurrency.lock.StockLock;
+import com.example.concurrency.lock.StockLockEvent;
+import com.example.concurrency.lock.StockLockRegistry;
+import com.example.concurrency.metrics.StockLockMeters;
+import com.example.concurrency.metrics.StockMetrics;
 import com.example.concurrency.repository.StockRepository;
-import lombok.extern.slf4j.Slf4j;
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.HashMap;
-import java.util.Map;
-
-@Slf4j
 @Service
 public class StockSynchronizedService {
 
+    private static final String STRATEGY = "synchronized";
+
     private final StockRepository stockRepository;
 
-    private final Map<Long, Stock> stockLockMap = new HashMap<>();
+    // 모니터는 재고 id 별 StockLock 객체를 쓴다. 캐시에서 엔티티가 제거되어도 모니터는 바뀌지 않는다.
+    private final StockLockRegistry stockLockRegistry;
+
+    private final StockCache stockCache;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ApplicationEventPublisher eventPublisher;
 
-    public StockSynchronizedService(StockRepository stockRepository) {
+    private final StockLockMeters meters;
+
+    private final Duration restockTimeout;
+
+    public StockSynchronizedService(StockRepository stockRepository, StockLockRegistry stockLockRegistry,
+                                    StockCache stockCache, TransactionTemplate transactionTemplate,
+                                    ApplicationEventPublisher eventPublisher, StockMetrics stockMetrics,
+                                    @Value("${stock.restock-wait.timeout:30s}") Duration restockTimeout) {
         this.stockRepository = stockRepository;
+        this.stockLockRegistry = stockLockRegistry;
+        this.stockCache = stockCache;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.meters = stockMetrics.lock(STRATEGY);
+        this.restockTimeout = restockTimeout;
     }
 
-    @Transactional
+    /*
+    쓰기는 synchronized 블록 안에서 커밋된다. 그래서 다음 쓰레드가 캐시 대신 DB 에서 읽어도 항상 커밋된 값을 본다.
+    캐시는 확인에만 쓰고 DB 에는 증감만 쓴다. 캐시가 오래된 값이어도 다른 경로의 변경을 덮어쓰지 않는다.
+     */
     public void decreaseProcess(Long id, Long quantity) {
-        synchronized (getStockLock(id)) {
-            log.info("{}, Lock 획득, templateId={}", Thread.currentThread().getName(), id);
-            Stock stock = getStockLock(id);
-            while (!stock.isPossibleDecrease(quantity)) {
-                try {
-                    log.info("{}, 재고 없어... Lock 반납, 대기표 뽑음, templateId={}", Thread.currentThread().getName(), id);
-                    stock.wait();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+        decreaseProcess(id, quantity, restockTimeout);
+    }
+
+    /**
+     * 재고가 모자라면 대기열에 서서 재고가 들어오기를 기다린다. 기다리는 동안에는 모니터를 잡고 있지 않는다.
+     * @throws InsufficientStockException timeout 안에 재고가 들어오지 않은 경우
+     */
+    public void decreaseProcess(Long id, Long quantity, Duration timeout) {
+        StockLock monitor = stockLockRegistry.acquire(id);
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            StockLock.Waiter waiter = null;
+            while (true) {
+                long start = System.nanoTime();
+                StockLockEvent acquire = StockLockEvent.begin(STRATEGY, StockLockEvent.ACQUIRE, id);
+                synchronized (monitor) {
+                    acquire.commit();
+                    long acquired = System.nanoTime();
+                    meters.recordWait(id, acquired - start);
+                    if (waiter != null) {
+                        monitor.consume(waiter);
+                    }
+
+                    // 다른 대기자에게 예약된 수량은 건드리지 않는다.
+                    long available = getQuantity(id);
+                    boolean reloaded = false;
+                    while (available - monitor.getReserved() >= quantity || !reloaded) {
+                        if (available - monitor.getReserved() >= quantity && tryDecrease(id, quantity, monitor.getReserved())) {
+                            stockCache.put(id, available - quantity);
+                            meters.recordHold(id, System.nanoTime() - acquired);
+                            return;
+                        }
+                        // 캐시가 DB 보다 많으면 감소가 실패하고, 적으면(다른 노드의 입고 등) 기다릴 필요가 없을 수 있다.
+                        // 대기열에 서기 전에 DB 에서 한 번 다시 읽고 확인한다.
+                        available = reload(id);
+                        reloaded = true;
+                    }
+                    if (deadline - System.nanoTime() <= 0) {
+                        throw new InsufficientStockException(available, quantity);
+                    }
+                    waiter = monitor.enqueue(quantity);
+                    meters.recordHold(id, System.nanoTime() - acquired);
                 }
-                log.info("{}, 시그널 받음, 대기표 반납, templateId={}", Thread.currentThread().getName(), id);
+
+                awaitRestock(monitor, waiter, id, quantity, deadline);
             }
+        } finally {
+            stockLockRegistry.release(monitor);
+        }
+    }
 
-            log.info("{}, templateId={}, 재고 감소={}-{}", Thread.currentThread().getName(), id, stock.getQuantity(), quantity);
-            stock.decrease(quantity);
+    public void increaseProcess(Long id, Long quantity) {
+        StockLock monitor = stockLockRegistry.acquire(id);
+        StockLockEvent acquire = StockLockEvent.begin(STRATEGY, StockLockEvent.ACQUIRE, id);
+        try {
+            synchronized (monitor) {
+                acquire.commit();
+                long available = increase(id, quantity);
 
-            stockRepository.save(stock);
+                // 늘어난 재고에 들어가는 대기자만 도착 순서대로 깨운다.
+                if (monitor.signalAvailable(available) > 0) {
+                    StockLockEvent.instant(STRATEGY, StockLockEvent.SIGNAL, id);
+                }
+            }
+        } finally {
+            stockLockRegistry.release(monitor);
         }
     }
 
-    @Transactional
-    public void increaseProcess(Long id, Long quantity) {
-        synchronized (getStockLock(id)) {
-            log.info("{}, Lock 획득, templateId={}", Thread.currentThread().getName(), id);
-            Stock stock = getStockLock(id);
+    /**
+     * 다른 노드나 다른 경로에서 재고를 변경했을 때 호출한다. 다음 조회는 DB 에서 다시 읽는다.
+     */
+    public void evict(Long id) {
+        stockCache.invalidate(id);
+    }
+
+    /**
+     * 다른 경로에서 바꾼 재고는 커밋 뒤에 캐시에서 지운다. 이 서비스가 쓴 변경은 캐시에 이미 반영되어 있다.
+     * 락 서비스가 아닌 경로(StockService, 예약 취소, 대량 입고 등)의 변경이면 늘어난 재고로 대기자도 깨운다.
+     * 다른 락 서비스의 대기열은 그 서비스의 락으로 다루므로 건드리지 않는다.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockChanged(StockChangedEvent event) {
+        if (event.getOrigin() == this) {
+            return;
+        }
+        evict(event.getStockId());
+        if (event.getOrigin() == null) {
+            signalWaiters(event.getStockId());
+        }
+    }
 
-            log.info("{}, templateId={}, 재고 증가={}+{}", Thread.currentThread().getName(), id, stock.getQuantity(), quantity);
-            stock.increase(quantity);
+    private void signalWaiters(Long id) {
+        StockLock monitor = stockLockRegistry.acquire(id);
+        try {
+            synchronized (monitor) {
+                if (monitor.getWaiterCount() > 0 && monitor.signalAvailable(getQuantity(id)) > 0) {
+                    StockLockEvent.instant(STRATEGY, StockLockEvent.SIGNAL, id);
+                }
+            }
+        } finally {
+            stockLockRegistry.release(monitor);
+        }
+    }
 
-            stockRepository.save(stock);
+    /*
+    시간이 지나거나 인터럽트되면 대기열에서 빠진다. 그 사이에 깨워졌다면 받은 예약으로 한 번 더 시도한다.
+     */
+    private void awaitRestock(StockLock monitor, StockLock.Waiter waiter, Long id, Long quantity, long deadline) {
+        StockLockEvent wait = StockLockEvent.begin(STRATEGY, StockLockEvent.WAIT, id);
+        try {
+            boolean granted = waiter.await(deadline - System.nanoTime());
+            wait.commit();
+            if (granted) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            synchronized (monitor) {
+                monitor.cancel(waiter);
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
 
-            log.info("{}, Lock 반납예정 시그널!, templateId={}", Thread.currentThread().getName(), id);
-            stock.notifyAll();
+        synchronized (monitor) {
+            if (waiter.isGranted()) {
+                return;
+            }
+            monitor.cancel(waiter);
         }
+        throw new InsufficientStockException(quantity);
+    }
+
+    // 커밋 뒤 리스너에서도 불리므로 엔티티 대신 수량만 읽는다.
+    private long getQuantity(Long id) {
+        return stockCache.get(id, key -> stockRepository.findQuantityById(key)
+                .orElseThrow(() -> new NoSuchElementException("stock not found: " + key)));
+    }
+
+    private long reload(Long id) {
+        stockCache.invalidate(id);
+        return getQuantity(id);
     }
 
-    private Stock getStockLock(Long id) {
-        synchronized (stockLockMap) {
-            return stockLockMap.computeIfAbsent(id, templateId -> stockRepository.findById(id).orElseThrow());
+    private boolean tryDecrease(Long id, Long quantity, long reserved) {
+        try {
+            return transactionTemplate.execute(status -> {
+                if (stockRepository.decreaseIfAvailable(id, quantity, reserved) == 0) {
+                    return false;
+                }
+                eventPublisher.publishEvent(new StockChangedEvent(id, this));
+                return true;
+            });
+        } catch (RuntimeException e) {
+            stockCache.invalidate(id);
+            throw e;
         }
     }
+
+    // 증가분만 쓰고, 대기자를 깨울 수량은 커밋된 행에서 다시 읽는다.
+    private long increase(Long id, Long quantity) {
+        stockCache.invalidate(id);
+        transactionTemplate.executeWithoutResult(status -> {
+            if (stockRepository.increase(id, quantity) == 0) {
+                throw new NoSuchElementException("stock not found: " + id);
+            }
+            eventPublisher.publishEvent(new StockChangedEvent(id, this));
+        });
+        return getQuantity(id);
+    }
 }
@@ -0,0 +1,59 @@
+package com.example.concurrency.strategy;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 재고 id 하나의 경합 정도와 현재 전략.
+ * 요청이 들어올 때 처리 중인 요청 수를 표본으로 지수 이동 평균(EWMA)을 갱신한다.
+ */
+public class StockContention {
+
+    private static final double ALPHA = 0.1;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private double concurrency;
+
+    private volatile StockLockType type;
+
+    private long switches;
+
+    StockContention(StockLockType type) {
+        this.type = type;
+    }
+
+    /*
+    임계값 두 개(hot / cold)로 전환 구간을 나눠서, 경계 근처의 부하에서 전략이 계속 바뀌지 않게 한다.
+     */
+    synchronized StockLockType enter(double hotThreshold, double coldThreshold, StockLockType hot, StockLockType cold) {
+        concurrency = concurrency * (1 - ALPHA) + inFlight.incrementAndGet() * ALPHA;
+
+        StockLockType next = type;
+        if (concurrency >= hotThreshold) {
+            next = hot;
+        } else if (concurrency <= coldThreshold) {
+            next = cold;
+        }
+        if (next != type) {
+            type = next;
+            switches++;
+        }
+        return type;
+    }
+
+    void exit() {
+        inFlight.decrementAndGet();
+    }
+
+    public StockLockType getType() {
+        return type;
+    }
+
+    public synchronized double getConcurrency() {
+        return concurrency;
+    }
+
+    public synchronized long getSwitches() {
+        return switches;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.concurrency.strategy;
+
+import com.example.concurrency.service.ShardedStockService;
+import com.example.concurrency.service.StockService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 재고 id 별 경합 정도에 따라 감소 전략을 고른다.
+ * 한가한 재고는 락 없이 끝나는 cold 전략(기본 낙관적 락)으로, 동시 요청이 몰리는 재고는 hot 전략(기본 요청 합치기)으로 처리한다.
+ * <p>
+ * 전환 중에는 같은 재고에 두 전략이 섞여 실행될 수 있다. 모든 전략이 버전 컬럼을 확인하거나 올리므로
+ * 섞여도 갱신이 사라지지 않는다. (충돌은 버전 충돌 예외로 드러나고, 낙관적 락 전략은 이를 재시도한다)
+ * <p>
+ * 조각으로 나눈 재고는 stock 행에 수량이 없으므로 전략을 고르지 않고 {@link ShardedStockService} 로 보낸다.
+ */
+@Component
+public class StockLockRouter {
+
+    private final Map<StockLockType, StockLockStrategy> strategies = new EnumMap<>(StockLockType.class);
+
+    private final ShardedStockService shardedStockService;
+
+    private final StockService stockService;
+
+    private final StockLockType coldType;
+
+    private final StockLockType hotType;
+
+    private final double hotThreshold;
+
+    private final double coldThreshold;
+
+    // 경합 정보는 최근에 다뤄진 재고만 유지한다.
+    private final Cache<Long, StockContention> contentions = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .build();
+
+    public StockLockRouter(List<StockLockStrategy> strategies,
+                           ShardedStockService shardedStockService,
+                           StockService stockService,
+                           @Value("${stock.router.cold-strategy:OPTIMISTIC}") StockLockType coldType,
+                           @Value("${stock.router.hot-strategy:COALESCING}") StockLockType hotType,
+                           @Value("${stock.router.hot-threshold:4}") double hotThreshold,
+                           @Value("${stock.router.cold-threshold:1.5}") double coldThreshold) {
+        strategies.forEach(strategy -> this.strategies.put(strategy.getType(), strategy));
+        if (!this.strategies.containsKey(coldType) || !this.strategies.containsKey(hotType)) {
+            throw new IllegalArgumentException("등록되지 않은 전략입니다. cold=" + coldType + ", hot=" + hotType);
+        }
+        if (coldThreshold >= hotThreshold) {
+            throw new IllegalArgumentException("cold-threshold 는 hot-threshold 보다 작아야 합니다.");
+        }
+        this.shardedStockService = shardedStockService;
+        this.stockService = stockService;
+        this.coldType = coldType;
+        this.hotType = hotType;
+        this.hotThreshold = hotThreshold;
+        this.coldThreshold = coldThreshold;
+    }
+
+    public void decrease(Long id, Long quantity) {
+        if (shardedStockService.isSharded(id)) {
+            shardedStockService.decrease(id, quantity);
+            return;
+        }
+
+        StockContention contention = getContention(id);
+        StockLockType type = contention.enter(hotThreshold, coldThreshold, hotType, coldType);
+        try {
+            strategies.get(type).decrease(id, quantity);
+        } finally {
+            contention.exit();
+        }
+    }
+
+    /**
+     * 증가는 조건이 없는 UPDATE 한 문장이라 전략을 고르지 않는다.
+     */
+    public void increase(Long id, Long quantity) {
+        if (shardedStockService.isSharded(id)) {
+            shardedStockService.increase(id, quantity);
+            return;
+        }
+        stockService.increase(id, quantity);
+    }
+
+    public StockContention getContention(Long id) {
+        return contentions.get(id, key -> new StockContention(coldType));
+    }
+}
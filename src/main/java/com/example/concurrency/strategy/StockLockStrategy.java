@@ -0,0 +1,39 @@
+package com.example.concurrency.strategy;
+
+/**
+ * 재고 감소 전략. 락을 잡고(또는 버전을 확인하고) 재고를 감소시키는 방식 하나를 감싼다.
+ */
+public interface StockLockStrategy {
+
+    StockLockType getType();
+
+    void decrease(Long id, Long quantity);
+
+    static StockLockStrategy of(StockLockType type, Decrease decrease) {
+        return new StockLockStrategy() {
+            @Override
+            public StockLockType getType() {
+                return type;
+            }
+
+            @Override
+            public void decrease(Long id, Long quantity) {
+                try {
+                    decrease.decrease(id, quantity);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * 락 대기 중 인터럽트를 던지는 facade 도 그대로 넘길 수 있게 한다.
+     */
+    @FunctionalInterface
+    interface Decrease {
+
+        void decrease(Long id, Long quantity) throws InterruptedException;
+    }
+}
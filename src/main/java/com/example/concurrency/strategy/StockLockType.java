@@ -0,0 +1,15 @@
+package com.example.concurrency.strategy;
+
+/**
+ * 재고 감소에 쓰는 동시성 제어 방식.
+ */
+public enum StockLockType {
+
+    OPTIMISTIC,
+    PESSIMISTIC,
+    CONDITIONAL_UPDATE,
+    COALESCING,
+    NAMED_LOCK,
+    LETTUCE,
+    REDISSON
+}
@@ -0,0 +1,97 @@
+package com.example.concurrency.admission;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.example.concurrency.lock.LockAcquisitionTimeoutException;
+import com.example.concurrency.metrics.StockMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+
+class StockAdmissionLimiterTest {
+
+    private final StockAdmissionLimiter limiter = new StockAdmissionLimiter(
+            new StockMetrics(new SimpleMeterRegistry(), 100), 2, 1, 4, 0.5, Duration.ofMillis(50));
+
+    @Test
+    void reject_over_limit() throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        CountDownLatch admitted = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+
+        for (int i = 0; i < 2; i++) {
+            executorService.submit(() -> {
+                limiter.execute(1L, () -> {
+                    admitted.countDown();
+                    release.await();
+                });
+                return null;
+            });
+        }
+        admitted.await();
+
+        assertThatThrownBy(() -> limiter.execute(1L, () -> {
+        })).isInstanceOf(StockOverloadedException.class);
+        // 다른 재고는 영향을 받지 않는다.
+        limiter.execute(2L, () -> {
+        });
+
+        release.countDown();
+        executorService.shutdown();
+    }
+
+    @Test
+    void decrease_on_timeout_and_increase_when_fast() throws InterruptedException {
+        assertThatThrownBy(() -> limiter.execute(1L, () -> {
+            throw new LockAcquisitionTimeoutException(1L);
+        })).isInstanceOf(LockAcquisitionTimeoutException.class);
+        assertThat(limiter.getLimit(1L).getLimit()).isEqualTo(1);
+
+        limiter.execute(1L, () -> Thread.sleep(100));
+        assertThat(limiter.getLimit(1L).getLimit()).isEqualTo(1);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.execute(1L, () -> {
+            });
+        }
+        assertThat(limiter.getLimit(1L).getLimit()).isGreaterThan(1);
+        assertThat(limiter.getLimit(1L).getInFlight()).isZero();
+    }
+
+    /**
+     * 같은 혼잡으로 동시에 시간 초과된 요청들은 한도를 한 번만 줄인다.
+     */
+    @Test
+    void decrease_once_per_window() throws InterruptedException {
+        StockAdmissionLimiter windowed = new StockAdmissionLimiter(
+                new StockMetrics(new SimpleMeterRegistry(), 100), 8, 1, 16, 0.5, Duration.ofSeconds(10));
+        int threadCount = 4;
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch admitted = new CountDownLatch(threadCount);
+        CountDownLatch finished = new CountDownLatch(threadCount);
+
+        for (int i = 0; i < threadCount; i++) {
+            executorService.submit(() -> {
+                try {
+                    windowed.execute(1L, () -> {
+                        admitted.countDown();
+                        admitted.await();
+                        throw new LockAcquisitionTimeoutException(1L);
+                    });
+                } finally {
+                    finished.countDown();
+                }
+                return null;
+            });
+        }
+        finished.await();
+        executorService.shutdown();
+
+        assertThat(windowed.getLimit(1L).getLimit()).isEqualTo(4);
+        assertThat(windowed.getLimit(1L).getInFlight()).isZero();
+    }
+}
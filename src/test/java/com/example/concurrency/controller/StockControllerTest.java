@@ -0,0 +1,147 @@
+package com.example.concurrency.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.example.concurrency.admission.StockAdmissionLimiter;
+import com.example.concurrency.domain.Stock;
+import com.example.concurrency.repository.StockRepository;
+import com.example.concurrency.service.StockAvailabilityService;
+import com.example.concurrency.service.StockService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+@SpringBootTest(properties = {
+        "stock.availability.max-staleness=1m",
+        "stock.admission.initial-limit=1",
+        "stock.admission.max-limit=1"
+})
+@AutoConfigureMockMvc
+class StockControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private StockAvailabilityService stockAvailabilityService;
+
+    @Autowired
+    private StockAdmissionLimiter stockAdmissionLimiter;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    private Long stockId;
+
+    @BeforeEach
+    public void before() {
+        stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+    }
+
+    @AfterEach
+    public void after() {
+        stockRepository.deleteAll();
+    }
+
+    @Test
+    void availability() throws Exception {
+        mockMvc.perform(get("/stocks/{id}/availability", stockId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.quantity").value(100))
+                .andExpect(jsonPath("$.available").value(true));
+
+        mockMvc.perform(get("/stocks/{id}/availability", -1L))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("캐시에 있으면 DB 를 읽지 않고, 서비스로 바뀌면 커밋 뒤에 지워진다")
+    void invalidated_after_commit() {
+        assertThat(stockAvailabilityService.getAvailableQuantity(stockId)).isEqualTo(100L);
+
+        // 이벤트 없이 바꾼 값은 캐시에 있는 동안 보이지 않는다.
+        jdbcTemplate.update("update stock set quantity = 50 where id = ?", stockId);
+        assertThat(stockAvailabilityService.getAvailableQuantity(stockId)).isEqualTo(100L);
+
+        stockService.decreaseWithConditionalUpdate(stockId, 1L);
+        assertThat(stockAvailabilityService.getAvailableQuantity(stockId)).isEqualTo(49L);
+    }
+
+    @Test
+    @DisplayName("다른 노드의 변경 알림으로 지워진다")
+    void invalidated_by_redis_message() throws InterruptedException {
+        assertThat(stockAvailabilityService.getAvailableQuantity(stockId)).isEqualTo(100L);
+        jdbcTemplate.update("update stock set quantity = 50 where id = ?", stockId);
+
+        redisTemplate.convertAndSend(StockAvailabilityService.CHANGED_CHANNEL, stockId.toString());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (stockAvailabilityService.getAvailableQuantity(stockId) != 50L && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(stockAvailabilityService.getAvailableQuantity(stockId)).isEqualTo(50L);
+    }
+
+    @Test
+    void decrease_and_increase() throws Exception {
+        mockMvc.perform(post("/stocks/{id}/decrease", stockId).contentType(MediaType.APPLICATION_JSON).content("{\"quantity\":30}"))
+                .andExpect(status().isNoContent());
+        mockMvc.perform(post("/stocks/{id}/increase", stockId).contentType(MediaType.APPLICATION_JSON).content("{\"quantity\":5}"))
+                .andExpect(status().isNoContent());
+        mockMvc.perform(post("/stocks/{id}/decrease", stockId).contentType(MediaType.APPLICATION_JSON).content("{\"quantity\":100}"))
+                .andExpect(status().isConflict());
+        mockMvc.perform(post("/stocks/{id}/decrease", stockId).contentType(MediaType.APPLICATION_JSON).content("{\"quantity\":0}"))
+                .andExpect(status().isBadRequest());
+
+        assertThat(stockRepository.findById(stockId).orElseThrow().getQuantity()).isEqualTo(75L);
+    }
+
+    @Test
+    @DisplayName("한도만큼 처리 중이면 락을 기다리지 않고 429 로 거절한다")
+    void too_many_requests_over_limit() throws Exception {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        CountDownLatch admitted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executorService.submit(() -> {
+            stockAdmissionLimiter.execute(stockId, () -> {
+                admitted.countDown();
+                release.await();
+            });
+            return null;
+        });
+        admitted.await();
+
+        try {
+            mockMvc.perform(post("/stocks/{id}/decrease", stockId).contentType(MediaType.APPLICATION_JSON).content("{\"quantity\":1}"))
+                    .andExpect(status().isTooManyRequests());
+        } finally {
+            release.countDown();
+            executorService.shutdown();
+        }
+        assertThat(stockRepository.findById(stockId).orElseThrow().getQuantity()).isEqualTo(100L);
+    }
+}
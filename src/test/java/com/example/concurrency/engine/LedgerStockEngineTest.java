@@ -0,0 +1,114 @@
+package com.example.concurrency.engine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.example.concurrency.domain.InsufficientStockException;
+import com.example.concurrency.domain.Stock;
+import com.example.concurrency.domain.StockSnapshot;
+import com.example.concurrency.metrics.StockMetrics;
+import com.example.concurrency.repository.StockMovementRepository;
+import com.example.concurrency.repository.StockRepository;
+import com.example.concurrency.repository.StockSnapshotRepository;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@SpringBootTest(properties = {
+        "stock.ledger.enabled=true",
+        "stock.ledger.snapshot-interval-millis=600000"
+})
+class LedgerStockEngineTest {
+
+    @Autowired
+    private LedgerStockEngine ledgerStockEngine;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    @Autowired
+    private StockMovementRepository stockMovementRepository;
+
+    @Autowired
+    private StockSnapshotRepository stockSnapshotRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private StockMetrics stockMetrics;
+
+    private Long stockId;
+
+    @BeforeEach
+    public void before() {
+        stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+    }
+
+    @AfterEach
+    public void after() {
+        stockMovementRepository.deleteAllInBatch();
+        stockSnapshotRepository.deleteAllInBatch();
+        stockRepository.deleteAll();
+    }
+
+    @Test
+    void decrease_concurrency_appends_movements() throws InterruptedException {
+        int threadCount = 100;
+        ExecutorService executorService = Executors.newFixedThreadPool(32);
+        CountDownLatch countDownLatch = new CountDownLatch(threadCount);
+
+        for (int i = 0; i < threadCount; i++) {
+            executorService.submit(() -> {
+                try {
+                    ledgerStockEngine.decrease(stockId, 1L);
+                } finally {
+                    countDownLatch.countDown();
+                }
+            });
+        }
+
+        countDownLatch.await();
+
+        assertThat(ledgerStockEngine.getQuantity(stockId)).isEqualTo(0L);
+        assertThatThrownBy(() -> ledgerStockEngine.decrease(stockId, 1L))
+                .isInstanceOf(InsufficientStockException.class);
+
+        // 실패한 감소는 남지 않고, stock 행은 고치지 않는다.
+        assertThat(stockMovementRepository.findAllByStockIdOrderById(stockId)).hasSize(100);
+        assertThat(stockRepository.findById(stockId).orElseThrow().getQuantity()).isEqualTo(100L);
+    }
+
+    @Test
+    @DisplayName("재시작하면 스냅샷과 그 이후 변경으로 수량을 복원한다")
+    void rebuild_from_snapshot_and_tail() {
+        ledgerStockEngine.decrease(stockId, 30L);
+        ledgerStockEngine.snapshot();
+        ledgerStockEngine.increase(stockId, 5L);
+        ledgerStockEngine.decrease(stockId, 10L);
+
+        StockSnapshot snapshot = stockSnapshotRepository.findById(stockId).orElseThrow();
+        assertThat(snapshot.getQuantity()).isEqualTo(70L);
+
+        LedgerStockEngine restarted = new LedgerStockEngine(jdbcTemplate, transactionTemplate, stockMetrics, 10);
+        restarted.rebuild();
+
+        assertThat(restarted.getQuantity(stockId)).isEqualTo(65L);
+
+        restarted.snapshot();
+        StockSnapshot next = stockSnapshotRepository.findById(stockId).orElseThrow();
+        assertThat(next.getQuantity()).isEqualTo(65L);
+        assertThat(next.getLastMovementId()).isGreaterThan(snapshot.getLastMovementId());
+    }
+}
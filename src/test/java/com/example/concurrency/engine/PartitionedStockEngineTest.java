@@ -0,0 +1,150 @@
+package com.example.concurrency.engine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.example.concurrency.domain.InsufficientStockException;
+import com.example.concurrency.domain.Stock;
+import com.example.concurrency.metrics.StockMetrics;
+import com.example.concurrency.repository.StockRepository;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@SpringBootTest(properties = "stock.partitioned.enabled=true")
+class PartitionedStockEngineTest {
+
+    @Autowired
+    private PartitionedStockEngine partitionedStockEngine;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private StockMetrics stockMetrics;
+
+    private Long stockId;
+
+    @BeforeEach
+    public void before() {
+        stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+    }
+
+    @AfterEach
+    public void after() {
+        stockRepository.deleteAll();
+    }
+
+    @Test
+    void decrease_concurrency() throws InterruptedException {
+        int threadCount = 100;
+        ExecutorService executorService = Executors.newFixedThreadPool(32);
+        CountDownLatch countDownLatch = new CountDownLatch(threadCount);
+
+        for (int i = 0; i < threadCount; i++) {
+            executorService.submit(() -> {
+                try {
+                    partitionedStockEngine.decrease(stockId, 1L);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    countDownLatch.countDown();
+                }
+            });
+        }
+
+        countDownLatch.await();
+
+        // 응답 전에 DB 에 반영된다.
+        assertThat(stockRepository.findById(stockId).orElseThrow().getQuantity()).isEqualTo(0L);
+        assertThat(partitionedStockEngine.getQuantity(stockId)).isEqualTo(0L);
+        assertThatThrownBy(() -> partitionedStockEngine.decrease(stockId, 1L))
+                .isInstanceOf(InsufficientStockException.class);
+    }
+
+    @Test
+    @DisplayName("큐가 가득 차면 거절하고, 거절된 요청은 반영되지 않는다")
+    void reject_when_queue_full() throws InterruptedException {
+        PartitionedStockEngine engine = new PartitionedStockEngine(jdbcTemplate, transactionTemplate, stockMetrics,
+                1, 1, 1, 10, Duration.ZERO, Duration.ofSeconds(5));
+        int threadCount = 100;
+        ExecutorService executorService = Executors.newFixedThreadPool(32);
+        CountDownLatch countDownLatch = new CountDownLatch(threadCount);
+        AtomicInteger rejected = new AtomicInteger();
+
+        for (int i = 0; i < threadCount; i++) {
+            executorService.submit(() -> {
+                try {
+                    engine.decrease(stockId, 1L);
+                } catch (PartitionBusyException e) {
+                    rejected.incrementAndGet();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    countDownLatch.countDown();
+                }
+            });
+        }
+
+        countDownLatch.await();
+        engine.close();
+
+        System.out.println("[check] rejected=" + rejected.get());
+        assertThat(rejected.get()).isPositive();
+        assertThat(stockRepository.findById(stockId).orElseThrow().getQuantity()).isEqualTo(rejected.get());
+    }
+
+    @Test
+    @DisplayName("다른 경로에서 바꾼 재고를 덮어쓰지 않는다")
+    void keeps_external_writes() throws InterruptedException {
+        partitionedStockEngine.decrease(stockId, 10L);
+        jdbcTemplate.update("update stock set quantity = quantity + 50 where id = ?", stockId);
+        partitionedStockEngine.decrease(stockId, 10L);
+        assertThat(stockRepository.findById(stockId).orElseThrow().getQuantity()).isEqualTo(130L);
+
+        // 캐시는 130 이지만 DB 는 20 이다. 조건에 걸려 다시 읽은 뒤 재고 부족으로 거절한다.
+        jdbcTemplate.update("update stock set quantity = 20 where id = ?", stockId);
+        assertThatThrownBy(() -> partitionedStockEngine.decrease(stockId, 30L))
+                .isInstanceOf(InsufficientStockException.class);
+        partitionedStockEngine.decrease(stockId, 20L);
+        assertThat(stockRepository.findById(stockId).orElseThrow().getQuantity()).isEqualTo(0L);
+    }
+
+    @Test
+    @DisplayName("멈춘 파티션은 요청을 기다리게 하지 않고 거절한다")
+    void reject_after_close() throws Exception {
+        PartitionedStockEngine engine = new PartitionedStockEngine(jdbcTemplate, transactionTemplate, stockMetrics,
+                1, 10, 10, 10, Duration.ZERO, Duration.ofSeconds(5));
+        engine.decrease(stockId, 1L);
+        engine.close();
+
+        CompletableFuture<Void> afterClose = CompletableFuture.runAsync(() -> {
+            try {
+                engine.decrease(stockId, 1L);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertThatThrownBy(() -> afterClose.get(1, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(stockRepository.findById(stockId).orElseThrow().getQuantity()).isEqualTo(99L);
+    }
+}
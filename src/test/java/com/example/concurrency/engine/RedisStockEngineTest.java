@@ -0,0 +1,151 @@
+package com.example.concurrency.engine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.example.concurrency.domain.InsufficientStockException;
+import com.example.concurrency.domain.Stock;
+import com.example.concurrency.repository.RedisStockRepository;
+import com.example.concurrency.repository.StockRepository;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import redis.embedded.RedisServer;
+
+/**
+ * 외부 Redis 없이 내장 Redis 로 실행한다.
+ */
+@SpringBootTest(properties = {
+        "stock.redis-inventory.enabled=true",
+        "stock.redis-inventory.reconcile-interval-millis=60000"
+})
+class RedisStockEngineTest {
+
+    private static RedisServer redisServer;
+
+    @DynamicPropertySource
+    static void redis(DynamicPropertyRegistry registry) throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+
+        registry.add("spring.redis.host", () -> "127.0.0.1");
+        registry.add("spring.redis.port", () -> port);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        redisServer.stop();
+    }
+
+    @Autowired
+    private RedisStockEngine redisStockEngine;
+
+    @Autowired
+    private RedisStockReconciler redisStockReconciler;
+
+    @Autowired
+    private RedisStockRepository redisStockRepository;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long stockId;
+
+    @BeforeEach
+    public void before() {
+        stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+    }
+
+    @AfterEach
+    public void after() {
+        redisStockReconciler.reconcile();
+        redisStockRepository.delete(stockId);
+        stockRepository.deleteAll();
+    }
+
+    @Test
+    void decrease_concurrency_and_reconcile() throws InterruptedException {
+        int threadCount = 120;
+        ExecutorService executorService = Executors.newFixedThreadPool(32);
+        CountDownLatch countDownLatch = new CountDownLatch(threadCount);
+        AtomicInteger insufficient = new AtomicInteger();
+
+        for (int i = 0; i < threadCount; i++) {
+            executorService.submit(() -> {
+                try {
+                    redisStockEngine.decrease(stockId, 1L);
+                } catch (InsufficientStockException e) {
+                    insufficient.incrementAndGet();
+                } finally {
+                    countDownLatch.countDown();
+                }
+            });
+        }
+
+        countDownLatch.await();
+
+        assertThat(insufficient.get()).isEqualTo(20);
+        assertThat(redisStockEngine.getQuantity(stockId)).isZero();
+        // DB 는 반영 전까지 이전 값이다.
+        assertThat(stockRepository.findById(stockId).orElseThrow().getQuantity()).isEqualTo(100L);
+
+        assertThat(redisStockReconciler.reconcile()).isEqualTo(100);
+        assertThat(stockRepository.findById(stockId).orElseThrow().getQuantity()).isZero();
+    }
+
+    @Test
+    @DisplayName("시작할 때 DB 재고에 아직 반영되지 않은 증감을 더해서 올린다")
+    void warm_up_keeps_unreconciled_value() {
+        Long otherId = stockRepository.saveAndFlush(new Stock(2L, 50L)).getId();
+        redisStockEngine.decrease(stockId, 10L);
+
+        redisStockEngine.warmUp();
+
+        assertThat(redisStockRepository.getQuantity(otherId)).isEqualTo(50L);
+        assertThat(redisStockRepository.getQuantity(stockId)).isEqualTo(90L);
+        redisStockRepository.delete(otherId);
+    }
+
+    @Test
+    void reconcile_adds_deltas() {
+        redisStockEngine.decrease(stockId, 30L);
+        redisStockEngine.increase(stockId, 5L);
+        redisStockReconciler.reconcile();
+
+        assertThat(redisStockReconciler.reconcile()).isZero();
+        assertThat(stockRepository.findById(stockId).orElseThrow().getQuantity()).isEqualTo(75L);
+    }
+
+    @Test
+    @DisplayName("DB 에서 직접 바뀐 재고는 반영 때 지워지지 않고, 다시 올릴 때 Redis 에도 반영된다")
+    void keeps_db_side_change() {
+        redisStockEngine.decrease(stockId, 10L);
+        jdbcTemplate.update("update stock set quantity = quantity + 50 where id = ?", stockId);
+
+        redisStockEngine.warmUp();
+        assertThat(redisStockEngine.getQuantity(stockId)).isEqualTo(140L);
+
+        redisStockReconciler.reconcile();
+        assertThat(stockRepository.findById(stockId).orElseThrow().getQuantity()).isEqualTo(140L);
+    }
+}
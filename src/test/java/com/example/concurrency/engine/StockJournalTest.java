@@ -0,0 +1,45 @@
+package com.example.concurrency.engine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StockJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void group_commit_keeps_every_record() throws InterruptedException {
+        StockJournal journal = new StockJournal(dir, true);
+        int threadCount = 200;
+        ExecutorService executorService = Executors.newFixedThreadPool(32);
+        CountDownLatch countDownLatch = new CountDownLatch(threadCount);
+
+        for (int i = 0; i < threadCount; i++) {
+            long id = i % 2 + 1;
+            executorService.submit(() -> {
+                try {
+                    journal.append(id, -1L);
+                } finally {
+                    countDownLatch.countDown();
+                }
+            });
+        }
+
+        countDownLatch.await();
+        journal.close();
+
+        assertThat(journal.getSealedDeltas()).containsEntry(1L, -100L).containsEntry(2L, -100L);
+
+        // 재시작하면 디스크의 레코드로 같은 합계가 나온다.
+        StockJournal restarted = new StockJournal(dir, true);
+        restarted.recover(0);
+        assertThat(restarted.getSealedDeltas()).containsEntry(1L, -100L).containsEntry(2L, -100L);
+    }
+}
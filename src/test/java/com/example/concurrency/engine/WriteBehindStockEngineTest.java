@@ -0,0 +1,150 @@
+package com.example.concurrency.engine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.example.concurrency.domain.InsufficientStockException;
+import com.example.concurrency.domain.Stock;
+import com.example.concurrency.metrics.StockMetrics;
+import com.example.concurrency.repository.StockRepository;
+import com.example.concurrency.service.StockService;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@SpringBootTest(properties = {
+        "stock.write-behind.enabled=true",
+        "stock.write-behind.flush-interval-millis=60000"
+})
+class WriteBehindStockEngineTest {
+
+    @TempDir
+    static Path journalDir;
+
+    @DynamicPropertySource
+    static void journal(DynamicPropertyRegistry registry) {
+        registry.add("stock.write-behind.journal-dir", () -> journalDir.resolve("engine").toString());
+    }
+
+    @Autowired
+    private WriteBehindStockEngine writeBehindStockEngine;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private StockMetrics stockMetrics;
+
+    private Long stockId;
+
+    @BeforeEach
+    public void before() {
+        stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+    }
+
+    @AfterEach
+    public void after() {
+        writeBehindStockEngine.flush();
+        stockRepository.deleteAll();
+    }
+
+    @Test
+    void decrease_concurrency_and_flush() throws InterruptedException {
+        int threadCount = 100;
+        ExecutorService executorService = Executors.newFixedThreadPool(32);
+        CountDownLatch countDownLatch = new CountDownLatch(threadCount);
+
+        for (int i = 0; i < threadCount; i++) {
+            executorService.submit(() -> {
+                try {
+                    writeBehindStockEngine.decrease(stockId, 1L);
+                } finally {
+                    countDownLatch.countDown();
+                }
+            });
+        }
+
+        countDownLatch.await();
+
+        assertThat(writeBehindStockEngine.getQuantity(stockId)).isEqualTo(0L);
+        assertThatThrownBy(() -> writeBehindStockEngine.decrease(stockId, 1L))
+                .isInstanceOf(InsufficientStockException.class);
+
+        // flush 전에는 DB 가 그대로다.
+        assertThat(stockRepository.findById(stockId).orElseThrow().getQuantity()).isEqualTo(100L);
+
+        writeBehindStockEngine.flush();
+
+        assertThat(stockRepository.findById(stockId).orElseThrow().getQuantity()).isEqualTo(0L);
+    }
+
+    @Test
+    @DisplayName("flush 전에 종료되어도 저널에서 복구된다")
+    void recover_from_journal() {
+        Path dir = journalDir.resolve("crash");
+        WriteBehindStockEngine crashed = new WriteBehindStockEngine(jdbcTemplate, transactionTemplate, stockMetrics, dir, true, 10);
+        crashed.decrease(stockId, 30L);
+        crashed.increase(stockId, 5L);
+        crashed.decrease(stockId, 10L);
+        // flush 없이 종료
+
+        assertThat(stockRepository.findById(stockId).orElseThrow().getQuantity()).isEqualTo(100L);
+
+        WriteBehindStockEngine restarted = new WriteBehindStockEngine(jdbcTemplate, transactionTemplate, stockMetrics, dir, true, 10);
+        restarted.recover();
+
+        assertThat(stockRepository.findById(stockId).orElseThrow().getQuantity()).isEqualTo(65L);
+        assertThat(restarted.getQuantity(stockId)).isEqualTo(65L);
+    }
+
+    @Test
+    @DisplayName("flush 는 증감만 반영하므로 다른 경로의 변경을 덮어쓰지 않는다")
+    void flush_keeps_external_change() {
+        writeBehindStockEngine.decrease(stockId, 10L);
+        stockService.increase(stockId, 50L);
+
+        writeBehindStockEngine.flush();
+
+        assertThat(stockRepository.findById(stockId).orElseThrow().getQuantity()).isEqualTo(140L);
+        assertThat(writeBehindStockEngine.getQuantity(stockId)).isEqualTo(140L);
+    }
+
+    @Test
+    @DisplayName("DB 에 반영한 세그먼트는 재시작 때 다시 반영하지 않는다")
+    void recover_skips_applied_segment() {
+        Path dir = journalDir.resolve("applied");
+        WriteBehindStockEngine crashed = new WriteBehindStockEngine(jdbcTemplate, transactionTemplate, stockMetrics, dir, true, 10);
+        crashed.decrease(stockId, 30L);
+        // 증감과 세그먼트 번호를 커밋한 뒤, 세그먼트를 지우기 전에 종료된 상황
+        jdbcTemplate.update("update stock set quantity = quantity - 30 where id = ?", stockId);
+        jdbcTemplate.update("insert into stock_journal_checkpoint (journal, segment_no) values (?, 1)",
+                dir.toAbsolutePath().normalize().toString());
+
+        WriteBehindStockEngine restarted = new WriteBehindStockEngine(jdbcTemplate, transactionTemplate, stockMetrics, dir, true, 10);
+        restarted.recover();
+
+        assertThat(stockRepository.findById(stockId).orElseThrow().getQuantity()).isEqualTo(70L);
+        assertThat(restarted.getQuantity(stockId)).isEqualTo(70L);
+    }
+}
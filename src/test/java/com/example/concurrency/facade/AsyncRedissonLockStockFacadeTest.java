@@ -0,0 +1,115 @@
+package com.example.concurrency.facade;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.example.concurrency.domain.Stock;
+import com.example.concurrency.lock.RedissonFence;
+import com.example.concurrency.metrics.StockMetrics;
+import com.example.concurrency.repository.StockRepository;
+import com.example.concurrency.service.StockService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class AsyncRedissonLockStockFacadeTest {
+
+    @Autowired
+    private AsyncRedissonLockStockFacade asyncRedissonLockStockFacade;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private RedissonFence redissonFence;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private StockMetrics stockMetrics;
+
+    private Long stockId;
+
+    @BeforeEach
+    public void before() {
+        stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+    }
+
+    @AfterEach
+    public void after() {
+        stockRepository.deleteAll();
+    }
+
+    /**
+     * 요청마다 쓰레드를 만들지 않고 한 쓰레드에서 100개를 동시에 걸어도 모두 처리된다.
+     */
+    @Test
+    void decrease_async() {
+        int requestCount = 100;
+        int threadsBefore = Thread.activeCount();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        for (int i = 0; i < requestCount; i++) {
+            futures.add(asyncRedissonLockStockFacade.decrease(stockId, 1L));
+        }
+        int threadsWhileWaiting = Thread.activeCount();
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        Stock stock = stockRepository.findById(stockId).orElseThrow();
+
+        System.out.println("[check] threads before=" + threadsBefore + ", while waiting=" + threadsWhileWaiting);
+        assertEquals(0L, stock.getQuantity());
+    }
+
+    /**
+     * DB 쓰레드 큐가 가득 차서 거절된 요청도 락을 풀고 끝난다. 받아들인 요청만 감소된다.
+     */
+    @Test
+    void rejected_database_job_releases_lock() {
+        AsyncRedissonLockStockFacade facade = new AsyncRedissonLockStockFacade(redissonClient, redissonFence,
+                stockService, stockMetrics, Duration.ofSeconds(5), 1, 1);
+        List<Long> stockIds = new ArrayList<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < 10; i++) {
+                Long id = stockRepository.saveAndFlush(new Stock(2L, 1L)).getId();
+                stockIds.add(id);
+                futures.add(facade.decrease(id, 1L));
+            }
+
+            int rejected = 0;
+            for (CompletableFuture<Void> future : futures) {
+                try {
+                    future.join();
+                } catch (CompletionException e) {
+                    assertThat(e).hasRootCauseInstanceOf(RejectedExecutionException.class);
+                    rejected++;
+                }
+            }
+
+            long decreased = stockIds.stream()
+                    .filter(id -> stockRepository.findById(id).orElseThrow().getQuantity() == 0L)
+                    .count();
+            System.out.println("[check] rejected=" + rejected);
+            assertEquals(stockIds.size() - rejected, decreased);
+            assertThat(stockIds).noneMatch(id -> redissonClient.getLock(id.toString()).isLocked());
+        } finally {
+            facade.close();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.concurrency.facade;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import com.example.concurrency.domain.Stock;
@@ -7,10 +8,12 @@ import com.example.concurrency.repository.StockRepository;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 
 @SpringBootTest
@@ -23,12 +26,16 @@ class NamedLockStockFacadeTest {
     @Autowired
     private StockRepository stockRepository;
 
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    private int poolSize;
+
+    private Long stockId;
 
     @BeforeEach
     public void before() {
         Stock stock = new Stock(1L, 100L);
 
-        stockRepository.saveAndFlush(stock);
+        stockId = stockRepository.saveAndFlush(stock).getId();
     }
 
     @AfterEach
@@ -45,7 +52,7 @@ class NamedLockStockFacadeTest {
         for (int i = 0; i < threadCount; i++) {
             executorService.submit(() -> {
                 try {
-                    namedLockStockFacade.decrease(1L, 1L);
+                    namedLockStockFacade.decrease(stockId, 1L);
                 } finally {
                     countDownLatch.countDown();
                 }
@@ -54,9 +61,34 @@ class NamedLockStockFacadeTest {
 
         countDownLatch.await();
 
-        Stock stock = stockRepository.findById(1L).orElseThrow();
+        Stock stock = stockRepository.findById(stockId).orElseThrow();
         System.out.println("[check] " + stock.getQuantity());
         assertEquals(0L, stock.getQuantity());
     }
 
-}
\ No newline at end of file
+    /**
+     * 업무용 풀 크기의 몇 배가 되는 동시 요청에서도 커넥션을 서로 기다리며 멈추지 않는다.
+     */
+    @Test
+    void decrease_namedLock_no_pool_starvation() throws InterruptedException {
+        int threadCount = poolSize * 10;
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch countDownLatch = new CountDownLatch(100);
+
+        for (int i = 0; i < 100; i++) {
+            executorService.submit(() -> {
+                try {
+                    namedLockStockFacade.decrease(stockId, 1L);
+                } finally {
+                    countDownLatch.countDown();
+                }
+            });
+        }
+
+        assertThat(countDownLatch.await(30, TimeUnit.SECONDS)).isTrue();
+        executorService.shutdown();
+
+        assertEquals(0L, stockRepository.findById(stockId).orElseThrow().getQuantity());
+    }
+
+}
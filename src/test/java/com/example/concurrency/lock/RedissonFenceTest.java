@@ -0,0 +1,50 @@
+package com.example.concurrency.lock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class RedissonFenceTest {
+
+    private static final Long KEY = 987_655L;
+
+    @Autowired
+    private RedissonFence redissonFence;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @AfterEach
+    public void after() {
+        redissonClient.getLock(KEY.toString()).forceUnlock();
+    }
+
+    /**
+     * 락을 잡은 뒤 멈춘 사이에 lease 가 끝나 다음 소유자가 토큰을 받았다면, 이전 소유자는 더 큰 토큰을 받지 못한다.
+     */
+    @Test
+    void owner_that_lost_the_lease_gets_no_token() throws InterruptedException {
+        RLock lock = redissonClient.getLock(KEY.toString());
+        long paused = 1L;
+        long next = 2L;
+
+        assertThat(lock.tryLockAsync(0, 1000, TimeUnit.MILLISECONDS, paused).toCompletableFuture().join()).isTrue();
+        long first = redissonFence.issue(lock, paused, KEY);
+
+        Thread.sleep(1200);
+        assertThat(lock.tryLockAsync(0, 5000, TimeUnit.MILLISECONDS, next).toCompletableFuture().join()).isTrue();
+        long second = redissonFence.issue(lock, next, KEY);
+
+        assertThat(second).isGreaterThan(first);
+        assertThatThrownBy(() -> redissonFence.issue(lock, paused, KEY))
+                .isInstanceOf(LockAcquisitionTimeoutException.class);
+    }
+}
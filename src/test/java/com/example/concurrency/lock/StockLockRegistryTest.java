@@ -0,0 +1,110 @@
+package com.example.concurrency.lock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class StockLockRegistryTest {
+
+    private static final int SKU_COUNT = 8;
+    private static final int THREAD_PER_SKU = 2;
+
+    @Test
+    @DisplayName("다른 재고 id 의 락은 서로를 막지 않는다")
+    void different_ids_do_not_block() throws InterruptedException {
+        StockLockRegistry registry = new StockLockRegistry();
+        StockLock lock1 = registry.acquire(1L);
+        lock1.lock();
+        try {
+            Thread other = new Thread(() -> {
+                StockLock lock2 = registry.acquire(2L);
+                try {
+                    assertThat(lock2.tryLock(0, TimeUnit.MILLISECONDS)).isTrue();
+                    lock2.unlock();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    registry.release(lock2);
+                }
+            });
+            other.start();
+            other.join();
+        } finally {
+            lock1.unlock();
+            registry.release(lock1);
+        }
+    }
+
+    @Test
+    @DisplayName("사용이 끝난 id 의 락은 저장소에서 제거된다")
+    void released_lock_is_removed() {
+        StockLockRegistry registry = new StockLockRegistry();
+        StockLock first = registry.acquire(1L);
+        StockLock second = registry.acquire(1L);
+
+        assertThat(first).isSameAs(second);
+
+        registry.release(first);
+        assertThat(registry.size()).isEqualTo(1);
+        registry.release(second);
+        assertThat(registry.size()).isZero();
+    }
+
+    /**
+     * 여러 상품에 동시에 요청이 들어올 때, 서로 다른 id 의 락은 동시에 잡혀 있을 수 있고 같은 id 의 락은 한 번에 하나만 잡힌다.
+     * 락을 잡은 쓰레드는 모든 id 의 락이 잡힐 때까지 놓지 않으므로, id 별로 나뉘지 않았다면 latch 가 열리지 않는다.
+     */
+    @Test
+    @DisplayName("여러 상품 경합: 다른 id 의 락은 동시에 잡힌다")
+    void multi_sku_contention() throws InterruptedException {
+        StockLockRegistry registry = new StockLockRegistry();
+        CountDownLatch allHeld = new CountDownLatch(SKU_COUNT);
+        AtomicInteger[] holders = new AtomicInteger[SKU_COUNT];
+        for (int i = 0; i < SKU_COUNT; i++) {
+            holders[i] = new AtomicInteger();
+        }
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger overlapped = new AtomicInteger();
+
+        int threadCount = SKU_COUNT * THREAD_PER_SKU;
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch countDownLatch = new CountDownLatch(threadCount);
+
+        for (int i = 0; i < threadCount; i++) {
+            int id = i % SKU_COUNT;
+            executorService.submit(() -> {
+                StockLock stockLock = registry.acquire((long) id);
+                stockLock.lock();
+                try {
+                    if (holders[id].incrementAndGet() > 1) {
+                        overlapped.incrementAndGet();
+                    }
+                    allHeld.countDown();
+                    if (allHeld.await(5, TimeUnit.SECONDS)) {
+                        concurrent.incrementAndGet();
+                    }
+                    holders[id].decrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    stockLock.unlock();
+                    registry.release(stockLock);
+                    countDownLatch.countDown();
+                }
+            });
+        }
+
+        countDownLatch.await();
+        executorService.shutdown();
+
+        assertThat(concurrent.get()).isEqualTo(threadCount);
+        assertThat(overlapped.get()).isZero();
+        assertThat(registry.size()).isZero();
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.concurrency.lock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class StockLockTest {
+
+    @Test
+    @DisplayName("재고가 늘면 남은 재고에 들어가는 대기자만 도착 순서대로 깨운다")
+    void signal_wakes_only_fitting_waiters_in_order() {
+        StockLock stockLock = new StockLock(1L);
+        StockLock.Waiter big = stockLock.enqueue(5);
+        StockLock.Waiter first = stockLock.enqueue(2);
+        StockLock.Waiter second = stockLock.enqueue(2);
+
+        assertThat(stockLock.signalAvailable(3)).isEqualTo(1);
+
+        assertThat(big.isGranted()).isFalse();
+        assertThat(first.isGranted()).isTrue();
+        assertThat(second.isGranted()).isFalse();
+        assertThat(stockLock.getReserved()).isEqualTo(2);
+        assertThat(stockLock.getWaiterCount()).isEqualTo(2);
+
+        // 예약된 2 를 빼면 남은 재고는 6 이므로 5 와 뒤의 2 중 먼저 온 5 를 깨운다.
+        assertThat(stockLock.signalAvailable(8)).isEqualTo(1);
+        assertThat(big.isGranted()).isTrue();
+        assertThat(second.isGranted()).isFalse();
+    }
+
+    @Test
+    @DisplayName("깨워진 뒤 취소하면 예약된 수량을 다음 대기자에게 넘긴다")
+    void cancel_after_grant_passes_reservation() {
+        StockLock stockLock = new StockLock(1L);
+        StockLock.Waiter first = stockLock.enqueue(3);
+        StockLock.Waiter second = stockLock.enqueue(3);
+
+        stockLock.signalAvailable(3);
+        stockLock.cancel(first);
+
+        assertThat(second.isGranted()).isTrue();
+        assertThat(stockLock.getReserved()).isEqualTo(3);
+        assertThat(stockLock.getWaiterCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("시간 안에 깨워지지 않으면 false 를 돌려주고, 취소된 대기자는 깨우지 않는다")
+    void await_timeout_and_cancel() throws InterruptedException {
+        StockLock stockLock = new StockLock(1L);
+        StockLock.Waiter waiter = stockLock.enqueue(1);
+
+        assertThat(waiter.await(TimeUnit.MILLISECONDS.toNanos(50))).isFalse();
+        stockLock.cancel(waiter);
+
+        assertThat(stockLock.signalAvailable(10)).isZero();
+        assertThat(stockLock.getReserved()).isZero();
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.concurrency.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.example.concurrency.domain.Stock;
+import com.example.concurrency.facade.OptimisticLockStockFacade;
+import com.example.concurrency.facade.RedissonLockStockFacade;
+import com.example.concurrency.repository.StockRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.context.SpringBootTest;
+
+// 히스토그램 설정이 실제로 적용되는지 보려면 SimpleMeterRegistry 대신 Prometheus 레지스트리가 필요하다.
+@AutoConfigureMetrics
+@SpringBootTest
+class StockMetricsTest {
+
+    @Autowired
+    private StockMetrics stockMetrics;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private RedissonLockStockFacade redissonLockStockFacade;
+
+    @Autowired
+    private OptimisticLockStockFacade optimisticLockStockFacade;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    @Value("${stock.metrics.max-sku-tags:100}")
+    private int maxSkuTags;
+
+    private Long stockId;
+
+    @BeforeEach
+    public void before() {
+        stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+    }
+
+    @AfterEach
+    public void after() {
+        stockRepository.deleteAll();
+    }
+
+    @Test
+    void lock_wait_and_hold_recorded_per_sku() {
+        for (int i = 0; i < 10; i++) {
+            redissonLockStockFacade.decrease(stockId, 1L);
+        }
+
+        String sku = stockId.toString();
+        assertEquals(10L, meterRegistry.get("stock.lock.wait").tags("strategy", "redisson", "sku", sku).timer().count());
+        assertEquals(10L, meterRegistry.get("stock.lock.hold").tags("strategy", "redisson", "sku", sku).timer().count());
+        assertEquals(10L, meterRegistry.get("stock.lock.release").tags("strategy", "redisson", "sku", sku).timer().count());
+    }
+
+    /**
+     * 히스토그램은 sku 태그가 없는 stock.lock.latency 에만 있고, sku 별 타이머에는 없다.
+     */
+    @Test
+    void histogram_only_on_aggregate() {
+        StockLockMeters meters = stockMetrics.lock("histogram");
+        meters.recordWait(stockId, 1_000_000);
+
+        Timer aggregate = meterRegistry.get("stock.lock.latency").tags("strategy", "histogram", "phase", "wait").timer();
+        Timer perSku = meterRegistry.get("stock.lock.wait").tags("strategy", "histogram", "sku", stockId.toString()).timer();
+        assertEquals(1L, aggregate.count());
+        assertTrue(aggregate.takeSnapshot().histogramCounts().length > 0);
+        assertEquals(0, perSku.takeSnapshot().histogramCounts().length);
+    }
+
+    @Test
+    void optimistic_retries_counted() throws InterruptedException {
+        int threadCount = 50;
+        ExecutorService executorService = Executors.newFixedThreadPool(16);
+        CountDownLatch countDownLatch = new CountDownLatch(threadCount);
+
+        for (int i = 0; i < threadCount; i++) {
+            executorService.submit(() -> {
+                try {
+                    optimisticLockStockFacade.decreaseWithOptimisticLock(stockId, 1L);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    countDownLatch.countDown();
+                }
+            });
+        }
+
+        countDownLatch.await();
+
+        double retries = meterRegistry.get("stock.optimistic.retries")
+                .tags("strategy", "optimistic", "sku", stockId.toString()).counter().count();
+        assertEquals(optimisticLockStockFacade.getStatistics(stockId).getRetries(), (long) retries);
+    }
+
+    /**
+     * sku 태그 종류는 한도를 넘지 않고, 나머지 재고는 sku=other 에 합쳐진다.
+     */
+    @Test
+    void sku_tags_bounded() {
+        StockLockMeters meters = stockMetrics.lock("bounded");
+        int skuCount = maxSkuTags * 3;
+        for (long sku = 0; sku < skuCount; sku++) {
+            meters.recordWait(sku, 1_000);
+        }
+
+        assertEquals(maxSkuTags + 1, meterRegistry.get("stock.lock.wait").tag("strategy", "bounded").timers().size());
+        assertEquals(skuCount - maxSkuTags,
+                meterRegistry.get("stock.lock.wait").tags("strategy", "bounded", "sku", StockLockMeters.OTHER).timer().count());
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.concurrency.repository;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.h2.jdbc.JdbcConnection;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * H2 에는 MySQL 의 get_lock / release_lock 이 없어서, 같은 동작을 하는 자바 함수를 별칭으로 등록한다.
+ * 락은 MySQL 과 같이 세션(커넥션) 단위로 소유되고, 같은 세션에서는 재진입할 수 있다.
+ * 테스트와 벤치마크(jmh 는 test 출력을 클래스패스에 둔다)에서만 쓰므로 운영 코드에는 들어가지 않는다.
+ * 별칭은 DB 단위라서 업무용 풀로 한 번 등록하면 named lock 전용 풀의 커넥션에서도 보인다.
+ */
+@Component
+public class H2NamedLockFunctions {
+
+    private static final Map<String, Owner> LOCKS = new HashMap<>();
+
+    public H2NamedLockFunctions(DataSourceProperties properties, JdbcTemplate jdbcTemplate) {
+        if (properties.determineUrl().startsWith("jdbc:h2:")) {
+            register(jdbcTemplate);
+        }
+    }
+
+    private static void register(JdbcTemplate jdbcTemplate) {
+        String type = H2NamedLockFunctions.class.getName();
+        jdbcTemplate.execute("CREATE ALIAS IF NOT EXISTS GET_LOCK FOR \"" + type + ".getLock\"");
+        jdbcTemplate.execute("CREATE ALIAS IF NOT EXISTS RELEASE_LOCK FOR \"" + type + ".releaseLock\"");
+    }
+
+    /**
+     * @return 획득하면 1, 시간 안에 획득하지 못하면 0
+     */
+    public static int getLock(Connection connection, String key, int timeoutSeconds)
+            throws SQLException, InterruptedException {
+        Object session = session(connection);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        synchronized (LOCKS) {
+            while (true) {
+                Owner owner = LOCKS.get(key);
+                if (owner == null) {
+                    LOCKS.put(key, new Owner(session));
+                    return 1;
+                }
+                if (owner.session == session) {
+                    owner.count++;
+                    return 1;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return 0;
+                }
+                TimeUnit.NANOSECONDS.timedWait(LOCKS, remaining);
+            }
+        }
+    }
+
+    /**
+     * @return 해제하면 1, 다른 세션의 락이면 0, 락이 없으면 null
+     */
+    public static Integer releaseLock(Connection connection, String key) throws SQLException {
+        Object session = session(connection);
+        synchronized (LOCKS) {
+            Owner owner = LOCKS.get(key);
+            if (owner == null) {
+                return null;
+            }
+            if (owner.session != session) {
+                return 0;
+            }
+            if (--owner.count == 0) {
+                LOCKS.remove(key);
+                LOCKS.notifyAll();
+            }
+            return 1;
+        }
+    }
+
+    // 함수 호출마다 새 Connection 객체가 넘어오므로 세션으로 소유자를 구분한다.
+    private static Object session(Connection connection) throws SQLException {
+        return connection.unwrap(JdbcConnection.class).getSession();
+    }
+
+    private static class Owner {
+
+        private final Object session;
+
+        private int count = 1;
+
+        private Owner(Object session) {
+            this.session = session;
+        }
+    }
+}
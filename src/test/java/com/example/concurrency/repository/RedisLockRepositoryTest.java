@@ -0,0 +1,86 @@
+package com.example.concurrency.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.concurrency.lock.LeaseWatchdog;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = "stock.lettuce-lock.ttl=300ms")
+class RedisLockRepositoryTest {
+
+    private static final Long KEY = 987654321L;
+
+    @Autowired
+    private RedisLockRepository redisLockRepository;
+
+    @Autowired
+    private LeaseWatchdog leaseWatchdog;
+
+    @AfterEach
+    public void after() {
+        redisLockRepository.unlock(KEY, "owner");
+    }
+
+    @Test
+    @DisplayName("다른 토큰으로는 락을 해제할 수 없다")
+    void unlock_only_own_lock() {
+        assertThat(redisLockRepository.lock(KEY, "owner")).isTrue();
+        assertThat(redisLockRepository.lock(KEY, "other")).isFalse();
+
+        assertThat(redisLockRepository.unlock(KEY, "other")).isFalse();
+        assertThat(redisLockRepository.lock(KEY, "other")).isFalse();
+
+        assertThat(redisLockRepository.unlock(KEY, "owner")).isTrue();
+        assertThat(redisLockRepository.lock(KEY, "other")).isTrue();
+        assertThat(redisLockRepository.unlock(KEY, "other")).isTrue();
+    }
+
+    @Test
+    @DisplayName("락을 잡을 때마다 더 큰 펜싱 토큰을 받는다")
+    void fence_token_increases() {
+        Long first = redisLockRepository.lockWithFence(KEY, "owner");
+        assertThat(first).isNotNull();
+        assertThat(redisLockRepository.lockWithFence(KEY, "other")).isNull();
+        assertThat(redisLockRepository.unlock(KEY, "owner")).isTrue();
+
+        Long second = redisLockRepository.lockWithFence(KEY, "owner");
+        assertThat(second).isGreaterThan(first);
+    }
+
+    @Test
+    @DisplayName("작업 중에는 lease 가 갱신되어 ttl 이 지나도 락이 유지된다")
+    void lease_renewed_while_working() throws InterruptedException {
+        assertThat(redisLockRepository.lockWithFence(KEY, "owner")).isNotNull();
+        assertThat(redisLockRepository.renew(KEY, "other")).isFalse();
+
+        try (LeaseWatchdog.Lease lease = leaseWatchdog.watch(redisLockRepository.getTtl(), System.nanoTime(),
+                () -> redisLockRepository.renew(KEY, "owner"))) {
+            Thread.sleep(1000);
+            assertThat(redisLockRepository.lockWithFence(KEY, "other")).isNull();
+            assertThat(lease.isLost()).isFalse();
+            assertThat(lease.isExpired()).isFalse();
+        }
+
+        // 갱신을 멈추면 ttl 안에 풀린다.
+        Thread.sleep(500);
+        assertThat(redisLockRepository.lockWithFence(KEY, "other")).isNotNull();
+        redisLockRepository.unlock(KEY, "other");
+    }
+
+    @Test
+    @DisplayName("첫 갱신 전에 lease 가 지났으면 만료로 본다")
+    void lease_expired_before_first_renewal() {
+        Duration ttl = Duration.ofMinutes(1);
+        long acquired = System.nanoTime() - ttl.toNanos();
+
+        try (LeaseWatchdog.Lease lease = leaseWatchdog.watch(ttl, acquired, () -> true)) {
+            assertThat(lease.isLost()).isFalse();
+            assertThat(lease.isExpired()).isTrue();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.concurrency.service;
+
+import com.example.concurrency.domain.InsufficientStockException;
+import com.example.concurrency.domain.Stock;
+import com.example.concurrency.domain.StockShard;
+import com.example.concurrency.repository.StockRepository;
+import com.example.concurrency.repository.StockShardRepository;
+import com.example.concurrency.strategy.StockLockRouter;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class ShardedStockServiceTest {
+
+    @Autowired
+    private ShardedStockService shardedStockService;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    @Autowired
+    private StockShardRepository stockShardRepository;
+
+    @Autowired
+    private StockLockRouter stockLockRouter;
+
+    @Autowired
+    private StockAvailabilityService stockAvailabilityService;
+
+    @Autowired
+    private StockBulkService stockBulkService;
+
+    @AfterEach
+    public void after() {
+        stockShardRepository.deleteAll();
+        stockRepository.deleteAll();
+    }
+
+    @Test
+    void decrease_concurrency() throws InterruptedException {
+        Long stockId = createShardedStock(100L, 4);
+
+        decreaseConcurrently(stockId, 100);
+
+        assertThat(stockShardRepository.sumQuantityByStockId(stockId)).isEqualTo(0L);
+        assertThatThrownBy(() -> shardedStockService.decrease(stockId, 1L))
+                .isInstanceOf(InsufficientStockException.class);
+    }
+
+    @Test
+    void decrease_across_shards_and_rebalance() {
+        Long stockId = createShardedStock(100L, 4);
+
+        // 한 조각(25)으로는 부족해서 여러 조각에서 나눠 뺀다.
+        shardedStockService.decrease(stockId, 30L);
+        shardedStockService.rebalance(stockId);
+
+        List<StockShard> shards = stockShardRepository.findAll();
+        long min = shards.stream().mapToLong(StockShard::getQuantity).min().orElseThrow();
+        long max = shards.stream().mapToLong(StockShard::getQuantity).max().orElseThrow();
+        assertThat(max - min).isLessThanOrEqualTo(1L);
+        assertThat(shardedStockService.getQuantity(stockId)).isEqualTo(70L);
+    }
+
+    /**
+     * 분할한 재고도 라우터의 감소/증가, 대량 입고, 재고 조회에서 조각 합계로 다뤄진다.
+     */
+    @Test
+    void sharded_stock_through_router_restock_and_availability() {
+        Long stockId = createShardedStock(100L, 4);
+        assertThat(stockAvailabilityService.getAvailableQuantity(stockId)).isEqualTo(100L);
+
+        stockLockRouter.decrease(stockId, 30L);
+        stockLockRouter.increase(stockId, 10L);
+        assertThat(stockBulkService.restock(Collections.singletonMap(stockId, 6L))).isEqualTo(1);
+
+        List<StockShard> shards = stockShardRepository.findAll();
+        assertThat(shards.stream().mapToLong(StockShard::getQuantity).sum()).isEqualTo(86L);
+        assertThat(stockRepository.findById(stockId).orElseThrow().getQuantity()).isEqualTo(0L);
+        assertThat(stockAvailabilityService.getAvailableQuantity(stockId)).isEqualTo(86L);
+    }
+
+    private Long createShardedStock(Long quantity, int shardCount) {
+        Long stockId = stockRepository.saveAndFlush(new Stock(1L, quantity)).getId();
+        shardedStockService.split(stockId, shardCount);
+        return stockId;
+    }
+
+    private void decreaseConcurrently(Long stockId, int operationCount) throws InterruptedException {
+        ExecutorService executorService = Executors.newFixedThreadPool(32);
+        CountDownLatch countDownLatch = new CountDownLatch(operationCount);
+
+        for (int i = 0; i < operationCount; i++) {
+            executorService.submit(() -> {
+                try {
+                    shardedStockService.decrease(stockId, 1L);
+                } finally {
+                    countDownLatch.countDown();
+                }
+            });
+        }
+
+        countDownLatch.await();
+        executorService.shutdown();
+    }
+}
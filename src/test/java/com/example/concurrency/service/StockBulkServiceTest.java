@@ -0,0 +1,137 @@
+package com.example.concurrency.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.example.concurrency.domain.Stock;
+import com.example.concurrency.repository.StockRepository;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+@SpringBootTest
+class StockBulkServiceTest {
+
+    @Autowired
+    private StockBulkService stockBulkService;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private StockReentrantLockService stockReentrantLockService;
+
+    @AfterEach
+    public void after() {
+        stockRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void import_and_restock() {
+        assertEquals(1234, stockBulkService.importStocks(newStocks(1234)));
+        assertEquals(1234L, stockRepository.count());
+
+        Map<Long, Long> quantities = new HashMap<>();
+        stockRepository.findAll().forEach(stock -> quantities.put(stock.getId(), 5L));
+        quantities.put(-1L, 5L);
+
+        assertEquals(1234, stockBulkService.restock(quantities));
+        assertEquals(1234L * 15, jdbcTemplate.queryForObject("select sum(quantity) from stock", Long.class));
+    }
+
+    /**
+     * 입고와 동시에 들어온 감소가 버전 충돌로 입고 배치를 실패시키지 않는다.
+     */
+    @Test
+    void restock_during_concurrent_decreases() throws InterruptedException {
+        stockBulkService.importStocks(newStocks(100));
+        List<Long> ids = jdbcTemplate.queryForList("select id from stock order by id", Long.class);
+        Map<Long, Long> quantities = new HashMap<>();
+        ids.forEach(id -> quantities.put(id, 5L));
+
+        int threadCount = 100;
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        CountDownLatch latch = new CountDownLatch(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            Long id = ids.get(i);
+            executorService.submit(() -> {
+                try {
+                    stockService.decreaseWithConditionalUpdate(id, 1L);
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertEquals(100, stockBulkService.restock(quantities));
+        latch.await();
+        executorService.shutdown();
+
+        assertEquals(100L * (10 + 5 - 1), jdbcTemplate.queryForObject("select sum(quantity) from stock", Long.class));
+    }
+
+    /**
+     * 대량 입고로 들어온 재고로 재고를 기다리던 요청이 깨어난다.
+     */
+    @Test
+    void restock_wakes_waiter() throws Exception {
+        stockBulkService.importStocks(newStocks(1));
+        Long id = jdbcTemplate.queryForObject("select id from stock", Long.class);
+        stockService.decreaseWithConditionalUpdate(id, 10L);
+
+        CompletableFuture<Void> waiter = CompletableFuture.runAsync(
+                () -> stockReentrantLockService.decreaseProcess(id, 5L, Duration.ofSeconds(10)));
+        // 대기열에 서기 전에 입고되면 대기 없이 감소한다. 어느 쪽이든 결과는 같다.
+        Thread.sleep(200);
+        Map<Long, Long> quantities = new HashMap<>();
+        quantities.put(id, 5L);
+        stockBulkService.restock(quantities);
+
+        waiter.get(5, TimeUnit.SECONDS);
+        assertEquals(0L, stockRepository.findById(id).orElseThrow().getQuantity());
+    }
+
+    /**
+     * 한 건씩 저장한 재고와 배치로 등록한 재고가 한 번의 입고에 모두 반영된다.
+     * 처리 행 수 비교는 StockBulkBenchmark 로 잰다.
+     */
+    @Test
+    void restock_row_by_row_and_bulk_rows() {
+        int rowCount = 300;
+        for (Stock stock : newStocks(rowCount)) {
+            stockRepository.saveAndFlush(stock);
+        }
+        assertEquals(rowCount, stockBulkService.importStocks(newStocks(rowCount)));
+
+        Map<Long, Long> quantities = new HashMap<>();
+        jdbcTemplate.queryForList("select id from stock", Long.class).forEach(id -> quantities.put(id, 1L));
+        assertEquals(rowCount * 2, stockBulkService.restock(quantities));
+
+        assertEquals(rowCount * 2L * 11, jdbcTemplate.queryForObject("select sum(quantity) from stock", Long.class));
+    }
+
+    private List<Stock> newStocks(int count) {
+        List<Stock> stocks = new ArrayList<>(count);
+        for (long productId = 1; productId <= count; productId++) {
+            stocks.add(new Stock(productId, 10L));
+        }
+        return stocks;
+    }
+}
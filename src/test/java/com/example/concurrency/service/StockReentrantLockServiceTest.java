@@ -1,8 +1,14 @@
 package com.example.concurrency.service;
 
+import com.example.concurrency.domain.InsufficientStockException;
 import com.example.concurrency.domain.Stock;
+import com.example.concurrency.lock.StockLock;
+import com.example.concurrency.lock.StockLockRegistry;
 import com.example.concurrency.repository.StockRepository;
+import javax.persistence.EntityManagerFactory;
 import org.assertj.core.api.Assertions;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -10,11 +16,23 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-@SpringBootTest
+// 문장 수를 세는 동안 스케줄러의 쿼리가 섞이지 않도록 주기를 늘려 둔다.
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "stock.reservation.sweep-interval-millis=3600000",
+        "stock.shard.rebalance-interval-millis=3600000"
+})
 class StockReentrantLockServiceTest {
 
     @Autowired
@@ -23,13 +41,23 @@ class StockReentrantLockServiceTest {
     @Autowired
     private StockReentrantLockService stockReentrantLockService;
 
+    @Autowired
+    private StockLockRegistry stockLockRegistry;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Long stockId1;
+
+    private Long stockId2;
+
     @BeforeEach
     public void before() {
         Stock stock = new Stock(1L, 100L);
         Stock stock2 = new Stock(2L, 100L);
 
-        stockRepository.saveAndFlush(stock);
-        stockRepository.saveAndFlush(stock2);
+        stockId1 = stockRepository.saveAndFlush(stock).getId();
+        stockId2 = stockRepository.saveAndFlush(stock2).getId();
     }
 
     @AfterEach
@@ -51,23 +79,23 @@ class StockReentrantLockServiceTest {
     @DisplayName("ReentrantLock의 Condition을 사용하여 쓰레드 동기화")
     void decrease_increase_decrease_reentrantLock() throws InterruptedException {
         Thread decrease1_A = new Thread(() -> {
-            stockReentrantLockService.decreaseProcess(1L, 100L);
+            stockReentrantLockService.decreaseProcess(stockId1, 100L);
         });
 
         Thread decrease1_B = new Thread(() -> {
-            stockReentrantLockService.decreaseProcess(1L, 100L);
+            stockReentrantLockService.decreaseProcess(stockId1, 100L);
         });
         // 아이디 별로 동기화가 다르게 진행됨. (임계영역 진입가능)
         Thread decrease2_A = new Thread(() -> {
-            stockReentrantLockService.decreaseProcess(2L, 100L);
+            stockReentrantLockService.decreaseProcess(stockId2, 100L);
         });
 
         Thread increase1_A = new Thread(() -> {
-            stockReentrantLockService.increaseProcess(1L, 50L);
+            stockReentrantLockService.increaseProcess(stockId1, 50L);
         });
 
         Thread increase1_B = new Thread(() -> {
-            stockReentrantLockService.increaseProcess(1L, 50L);
+            stockReentrantLockService.increaseProcess(stockId1, 50L);
         });
 
         decrease1_A.start();
@@ -87,9 +115,10 @@ class StockReentrantLockServiceTest {
         increase1_A.join();
         increase1_B.join();
 
-        Stock stock1 = stockRepository.findById(1L).orElseThrow();
-        Stock stock2 = stockRepository.findById(2L).orElseThrow();
-        Assertions.assertThat(stock1.getQuantity()).isEqualTo(100L);
+        Stock stock1 = stockRepository.findById(stockId1).orElseThrow();
+        Stock stock2 = stockRepository.findById(stockId2).orElseThrow();
+        // 시나리오 8번: decrease1_B 가 100 -> 0 으로 감소시킨다.
+        Assertions.assertThat(stock1.getQuantity()).isEqualTo(0L);
         Assertions.assertThat(stock2.getQuantity()).isEqualTo(0L);
     }
     /** LOG
@@ -134,4 +163,118 @@ class StockReentrantLockServiceTest {
      * Hibernate: delete from stock where id=?
      */
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("재고가 들어오면 들어간 수량에 맞는 대기자만 도착 순서대로 감소한다")
+    void restock_wakes_fitting_waiters_in_order() throws InterruptedException {
+        stockReentrantLockService.decreaseProcess(stockId1, 100L);
+
+        List<Long> completed = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (long quantity : new long[]{5L, 1L, 2L}) {
+            Thread thread = new Thread(() -> {
+                stockReentrantLockService.decreaseProcess(stockId1, quantity, Duration.ofSeconds(10));
+                completed.add(quantity);
+            });
+            thread.start();
+            threads.add(thread);
+            Thread.sleep(200);
+        }
+
+        stockReentrantLockService.increaseProcess(stockId1, 3L);
+        threads.get(1).join();
+        threads.get(2).join();
+        // 둘은 함께 깨어나므로 끝나는 순서는 정해지지 않는다. 먼저 온 5 는 그대로 기다린다.
+        Assertions.assertThat(completed).containsExactlyInAnyOrder(1L, 2L);
+
+        stockReentrantLockService.increaseProcess(stockId1, 5L);
+        threads.get(0).join();
+        Assertions.assertThat(completed).hasSize(3).endsWith(5L);
+        Assertions.assertThat(stockRepository.findById(stockId1).orElseThrow().getQuantity()).isEqualTo(0L);
+    }
+
+    @Test
+    @DisplayName("감소/증가와 대기 후 재확인은 엔티티를 읽지 않고 한 문장씩 처리한다")
+    void wait_path_does_not_load_entities() throws InterruptedException {
+        stockReentrantLockService.decreaseProcess(stockId1, 100L);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        Thread waiter = new Thread(() -> stockReentrantLockService.decreaseProcess(stockId1, 10L, Duration.ofSeconds(10)));
+        waiter.start();
+        awaitWaiters(stockId1, 1);
+        stockReentrantLockService.increaseProcess(stockId1, 10L);
+        waiter.join();
+
+        Assertions.assertThat(statistics.getEntityLoadCount()).isZero();
+        // 재고 부족 확인, 증가, 증가 후 수량 조회, 깨어난 뒤 감소
+        Assertions.assertThat(statistics.getPrepareStatementCount()).isEqualTo(4L);
+        assertEquals(0L, stockRepository.findQuantityById(stockId1).orElseThrow());
+    }
+
+    @Test
+    @DisplayName("재고가 들어오지 않으면 timeout 뒤에 재고 부족으로 끝난다")
+    void restock_wait_timeout() {
+        stockReentrantLockService.decreaseProcess(stockId1, 100L);
+
+        Assertions.assertThatThrownBy(() -> stockReentrantLockService.decreaseProcess(stockId1, 1L, Duration.ofMillis(200)))
+                .isInstanceOf(InsufficientStockException.class);
+
+        // 시간이 지난 대기자는 대기열에서 빠져서, 이후에 들어온 재고는 그대로 남는다.
+        stockReentrantLockService.increaseProcess(stockId1, 1L);
+        Assertions.assertThat(stockRepository.findById(stockId1).orElseThrow().getQuantity()).isEqualTo(1L);
+    }
+
+    @Test
+    @DisplayName("여러 상품에 동시 감소 요청 - 상품별 락으로 병렬 처리")
+    void decrease_multi_sku_reentrantLock() throws InterruptedException {
+        List<Long> ids = new ArrayList<>();
+        for (long productId = 10; productId < 18; productId++) {
+            ids.add(stockRepository.saveAndFlush(new Stock(productId, 10L)).getId());
+        }
+
+        int threadCount = ids.size() * 10;
+        ExecutorService executorService = Executors.newFixedThreadPool(32);
+        CountDownLatch countDownLatch = new CountDownLatch(threadCount);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < threadCount; i++) {
+            Long id = ids.get(i % ids.size());
+            executorService.submit(() -> {
+                try {
+                    stockReentrantLockService.decreaseProcess(id, 1L);
+                } finally {
+                    countDownLatch.countDown();
+                }
+            });
+        }
+
+        countDownLatch.await();
+        System.out.println("[check] " + threadCount + " decreases on " + ids.size() + " SKUs: "
+                + (System.currentTimeMillis() - start) + "ms");
+
+        for (Long id : ids) {
+            Assertions.assertThat(stockRepository.findById(id).orElseThrow().getQuantity()).isEqualTo(0L);
+        }
+    }
+
+    private void awaitWaiters(Long id, int count) throws InterruptedException {
+        StockLock stockLock = stockLockRegistry.acquire(id);
+        try {
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (true) {
+                stockLock.lock();
+                try {
+                    if (stockLock.getWaiterCount() >= count) {
+                        return;
+                    }
+                } finally {
+                    stockLock.unlock();
+                }
+                assertTrue(System.nanoTime() < deadline, "대기자가 대기열에 서지 않았습니다.");
+                Thread.sleep(10);
+            }
+        } finally {
+            stockLockRegistry.release(stockLock);
+        }
+    }
+}
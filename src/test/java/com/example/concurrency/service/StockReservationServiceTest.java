@@ -0,0 +1,118 @@
+package com.example.concurrency.service;
+
+import com.example.concurrency.domain.InsufficientStockException;
+import com.example.concurrency.domain.ReservationStatus;
+import com.example.concurrency.domain.Stock;
+import com.example.concurrency.repository.StockRepository;
+import com.example.concurrency.repository.StockReservationRepository;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class StockReservationServiceTest {
+
+    @Autowired
+    private StockReservationService stockReservationService;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    @Autowired
+    private StockReservationRepository stockReservationRepository;
+
+    private Long stockId;
+
+    @BeforeEach
+    public void before() {
+        stockId = stockRepository.saveAndFlush(new Stock(1L, 100L)).getId();
+    }
+
+    @AfterEach
+    public void after() {
+        stockReservationRepository.deleteAll();
+        stockRepository.deleteAll();
+    }
+
+    @Test
+    void reserve_concurrency() throws InterruptedException {
+        int threadCount = 100;
+        ExecutorService executorService = Executors.newFixedThreadPool(32);
+        CountDownLatch countDownLatch = new CountDownLatch(threadCount);
+
+        for (int i = 0; i < threadCount; i++) {
+            executorService.submit(() -> {
+                try {
+                    stockReservationService.reserve(stockId, 1L, Duration.ofMinutes(10));
+                } finally {
+                    countDownLatch.countDown();
+                }
+            });
+        }
+
+        countDownLatch.await();
+
+        Stock stock = stockRepository.findById(stockId).orElseThrow();
+        assertThat(stock.getQuantity()).isEqualTo(0L);
+        assertThat(stock.getReserved()).isEqualTo(100L);
+        assertThatThrownBy(() -> stockReservationService.reserve(stockId, 1L, Duration.ofMinutes(10)))
+                .isInstanceOf(InsufficientStockException.class);
+    }
+
+    @Test
+    void confirm_and_cancel() {
+        Long confirmed = stockReservationService.reserve(stockId, 30L, Duration.ofMinutes(10));
+        Long cancelled = stockReservationService.reserve(stockId, 20L, Duration.ofMinutes(10));
+
+        stockReservationService.confirm(confirmed);
+        stockReservationService.cancel(cancelled);
+
+        Stock stock = stockRepository.findById(stockId).orElseThrow();
+        assertThat(stock.getQuantity()).isEqualTo(70L);
+        assertThat(stock.getReserved()).isEqualTo(0L);
+        // 이미 끝난 예약은 다시 처리되지 않는다.
+        assertThatThrownBy(() -> stockReservationService.cancel(confirmed)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void expire() {
+        Long expired = stockReservationService.reserve(stockId, 40L, Duration.ZERO);
+        Long alive = stockReservationService.reserve(stockId, 10L, Duration.ofMinutes(10));
+
+        stockReservationService.expire();
+
+        Stock stock = stockRepository.findById(stockId).orElseThrow();
+        assertThat(stock.getQuantity()).isEqualTo(90L);
+        assertThat(stock.getReserved()).isEqualTo(10L);
+        assertThat(stockReservationRepository.findById(expired).orElseThrow().getStatus()).isEqualTo(ReservationStatus.EXPIRED);
+        assertThat(stockReservationRepository.findById(alive).orElseThrow().getStatus()).isEqualTo(ReservationStatus.RESERVED);
+        // 만료된 예약은 확정할 수 없다.
+        assertThatThrownBy(() -> stockReservationService.confirm(expired)).isInstanceOf(IllegalStateException.class);
+    }
+
+    /**
+     * 만료 시각이 지났으면 만료 처리가 돌기 전이라도 확정할 수 없고, 수량은 만료 처리 때 재고로 돌아간다.
+     */
+    @Test
+    void confirm_after_expiry_before_sweep() {
+        Long reservationId = stockReservationService.reserve(stockId, 40L, Duration.ZERO);
+
+        assertThatThrownBy(() -> stockReservationService.confirm(reservationId)).isInstanceOf(IllegalStateException.class);
+        assertThat(stockReservationRepository.findById(reservationId).orElseThrow().getStatus()).isEqualTo(ReservationStatus.RESERVED);
+
+        stockReservationService.expire();
+
+        Stock stock = stockRepository.findById(stockId).orElseThrow();
+        assertThat(stock.getQuantity()).isEqualTo(100L);
+        assertThat(stock.getReserved()).isEqualTo(0L);
+    }
+}
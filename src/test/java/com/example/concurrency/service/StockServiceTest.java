@@ -1,16 +1,27 @@
 package com.example.concurrency.service;
 
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import com.example.concurrency.domain.InsufficientStockException;
 import com.example.concurrency.domain.Stock;
 import com.example.concurrency.facade.LettuceLockStockFacade;
 import com.example.concurrency.facade.NamedLockStockFacade;
+import com.example.concurrency.facade.OptimisticConflictStatistics;
 import com.example.concurrency.facade.OptimisticLockStockFacade;
 import com.example.concurrency.facade.RedissonLockStockFacade;
+import com.example.concurrency.lock.StaleFenceTokenException;
 import com.example.concurrency.repository.StockRepository;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -39,11 +50,13 @@ class StockServiceTest {
     private RedissonLockStockFacade redissonLockStockFacade;
 
 
+    private Long stockId;
+
     @BeforeEach
     public void before() {
         Stock stock = new Stock(1L, 100L);
 
-        stockRepository.saveAndFlush(stock);
+        stockId = stockRepository.saveAndFlush(stock).getId();
     }
 
     @AfterEach
@@ -53,11 +66,11 @@ class StockServiceTest {
 
     @Test
     void decrease() {
-        stockService.decrease(1L, 1L);
+        stockService.decrease(stockId, 1L);
 
         // 100 - 1 = 99
 
-        Stock stock = stockRepository.findById(1L).orElseThrow(RuntimeException::new);
+        Stock stock = stockRepository.findById(stockId).orElseThrow(RuntimeException::new);
 
         assertEquals(99L, stock.getQuantity());
     }
@@ -71,7 +84,7 @@ class StockServiceTest {
         for (int i = 0; i < threadCount; i++) {
             executorService.submit(() -> {
                 try {
-                    stockService.decrease(1L, 1L);
+                    stockService.decrease(stockId, 1L);
                 } finally {
                     countDownLatch.countDown();
                 }
@@ -80,7 +93,7 @@ class StockServiceTest {
 
         countDownLatch.await();
 
-        Stock stock = stockRepository.findById(1L).orElseThrow();
+        Stock stock = stockRepository.findById(stockId).orElseThrow();
 
         assertEquals(0L, stock.getQuantity());
     }
@@ -94,7 +107,7 @@ class StockServiceTest {
         for (int i = 0; i < threadCount; i++) {
             executorService.submit(() -> {
                 try {
-                    stockService.decreaseWithPessimisticLock(1L, 1L);
+                    stockService.decreaseWithPessimisticLock(stockId, 1L);
                 } finally {
                     countDownLatch.countDown();
                 }
@@ -103,13 +116,48 @@ class StockServiceTest {
 
         countDownLatch.await();
 
-        Stock stock = stockRepository.findById(1L).orElseThrow();
+        Stock stock = stockRepository.findById(stockId).orElseThrow();
 
         assertEquals(0L, stock.getQuantity());
     }
 
     @Test
-    void decrease_optimisticLock() throws InterruptedException {
+    void decrease_optimisticLock() throws Exception {
+        int threadCount = 100;
+        ExecutorService executorService = Executors.newFixedThreadPool(32);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < threadCount; i++) {
+            futures.add(executorService.submit(() -> {
+                optimisticLockStockFacade.decreaseWithOptimisticLock(stockId, 1L);
+                return null;
+            }));
+        }
+
+        // 작업에서 난 예외를 삼키지 않도록 결과를 모두 확인한다.
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executorService.shutdown();
+
+        Stock stock = stockRepository.findById(stockId).orElseThrow();
+
+        OptimisticConflictStatistics statistics = optimisticLockStockFacade.getStatistics(stockId);
+        System.out.println("[check] conflicts=" + statistics.getConflicts() + ", retries=" + statistics.getRetries()
+                + ", pessimisticFallbacks=" + statistics.getPessimisticFallbacks());
+        assertEquals(0L, stock.getQuantity());
+    }
+
+    @Test
+    void decrease_optimisticLock_insufficient_not_retried() {
+        assertThatThrownBy(() -> optimisticLockStockFacade.decreaseWithOptimisticLock(stockId, 101L))
+                .isInstanceOf(InsufficientStockException.class);
+
+        assertEquals(0L, optimisticLockStockFacade.getStatistics(stockId).getRetries());
+    }
+
+    @Test
+    void decrease_namedLock() throws InterruptedException {
         int threadCount = 100;
         ExecutorService executorService = Executors.newFixedThreadPool(32);
         CountDownLatch countDownLatch = new CountDownLatch(threadCount);
@@ -117,7 +165,30 @@ class StockServiceTest {
         for (int i = 0; i < threadCount; i++) {
             executorService.submit(() -> {
                 try {
-                    optimisticLockStockFacade.decreaseWithOptimisticLock(1L, 1L);
+                    namedLockStockFacade.decrease(stockId, 1L);
+                } finally {
+                    countDownLatch.countDown();
+                }
+            });
+        }
+
+        countDownLatch.await();
+
+        Stock stock = stockRepository.findById(stockId).orElseThrow();
+
+        assertEquals(0L, stock.getQuantity());
+    }
+
+    @Test
+    void decrease_lettuceLock() throws InterruptedException {
+        int threadCount = 100;
+        ExecutorService executorService = Executors.newFixedThreadPool(32);
+        CountDownLatch countDownLatch = new CountDownLatch(threadCount);
+
+        for (int i = 0; i < threadCount; i++) {
+            executorService.submit(() -> {
+                try {
+                    lettuceLockStockFacade.decrease(stockId, 1L);
                 } catch (InterruptedException e) {
                     throw new RuntimeException(e);
                 } finally {
@@ -128,13 +199,16 @@ class StockServiceTest {
 
         countDownLatch.await();
 
-        Stock stock = stockRepository.findById(1L).orElseThrow();
+        Stock stock = stockRepository.findById(stockId).orElseThrow();
 
+        System.out.println("[check] redis ops/acquisition="
+                + lettuceLockStockFacade.getStatistics().getAttemptsPerAcquisition()
+                + ", wait p99<=" + lettuceLockStockFacade.getStatistics().getWaitMillisAt(0.99) + "ms");
         assertEquals(0L, stock.getQuantity());
     }
 
     @Test
-    void decrease_namedLock() throws InterruptedException {
+    void decrease_redissonLock() throws InterruptedException {
         int threadCount = 100;
         ExecutorService executorService = Executors.newFixedThreadPool(32);
         CountDownLatch countDownLatch = new CountDownLatch(threadCount);
@@ -142,7 +216,7 @@ class StockServiceTest {
         for (int i = 0; i < threadCount; i++) {
             executorService.submit(() -> {
                 try {
-                    namedLockStockFacade.decrease(1L, 1L);
+                    redissonLockStockFacade.decrease(stockId, 1L);
                 } finally {
                     countDownLatch.countDown();
                 }
@@ -151,13 +225,13 @@ class StockServiceTest {
 
         countDownLatch.await();
 
-        Stock stock = stockRepository.findById(1L).orElseThrow();
+        Stock stock = stockRepository.findById(stockId).orElseThrow();
 
         assertEquals(0L, stock.getQuantity());
     }
 
     @Test
-    void decrease_lettuceLock() throws InterruptedException {
+    void decrease_conditionalUpdate() throws InterruptedException {
         int threadCount = 100;
         ExecutorService executorService = Executors.newFixedThreadPool(32);
         CountDownLatch countDownLatch = new CountDownLatch(threadCount);
@@ -165,9 +239,7 @@ class StockServiceTest {
         for (int i = 0; i < threadCount; i++) {
             executorService.submit(() -> {
                 try {
-                    lettuceLockStockFacade.decrease(1L, 1L);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
+                    stockService.decreaseWithConditionalUpdate(stockId, 1L);
                 } finally {
                     countDownLatch.countDown();
                 }
@@ -176,13 +248,45 @@ class StockServiceTest {
 
         countDownLatch.await();
 
-        Stock stock = stockRepository.findById(1L).orElseThrow();
+        Stock stock = stockRepository.findById(stockId).orElseThrow();
 
         assertEquals(0L, stock.getQuantity());
+        assertThatThrownBy(() -> stockService.decreaseWithConditionalUpdate(stockId, 1L))
+                .isInstanceOf(InsufficientStockException.class);
     }
 
     @Test
-    void decrease_redissonLock() throws InterruptedException {
+    void decreaseWithFence_rejects_stale_token() {
+        stockService.decreaseWithFence(stockId, 1L, 2L);
+
+        // lease 가 끝난 이전 소유자(토큰 1)의 늦은 쓰기
+        assertThatThrownBy(() -> stockService.decreaseWithFence(stockId, 1L, 1L))
+                .isInstanceOf(StaleFenceTokenException.class);
+        assertThatThrownBy(() -> stockService.decreaseWithFence(stockId, 100L, 3L))
+                .isInstanceOf(InsufficientStockException.class);
+
+        assertEquals(99L, stockRepository.findById(stockId).orElseThrow().getQuantity());
+    }
+
+    @Test
+    void decreaseAll_rollback_when_any_insufficient() {
+        Long otherId = stockRepository.saveAndFlush(new Stock(2L, 1L)).getId();
+        Map<Long, Long> order = new LinkedHashMap<>();
+        order.put(stockId, 5L);
+        order.put(otherId, 2L);
+
+        assertThatThrownBy(() -> stockService.decreaseAll(order)).isInstanceOf(InsufficientStockException.class);
+
+        assertEquals(100L, stockRepository.findById(stockId).orElseThrow().getQuantity());
+        assertEquals(1L, stockRepository.findById(otherId).orElseThrow().getQuantity());
+    }
+
+    /**
+     * 주문마다 품목 순서가 달라도 id 순서로 잠그므로 교착 없이 모두 처리된다.
+     */
+    @Test
+    void decreaseAll_concurrency() throws InterruptedException {
+        List<Long> ids = createStocks(10, 100L);
         int threadCount = 100;
         ExecutorService executorService = Executors.newFixedThreadPool(32);
         CountDownLatch countDownLatch = new CountDownLatch(threadCount);
@@ -190,7 +294,7 @@ class StockServiceTest {
         for (int i = 0; i < threadCount; i++) {
             executorService.submit(() -> {
                 try {
-                    redissonLockStockFacade.decrease(1L, 1L);
+                    stockService.decreaseAll(shuffledOrder(ids));
                 } finally {
                     countDownLatch.countDown();
                 }
@@ -199,8 +303,69 @@ class StockServiceTest {
 
         countDownLatch.await();
 
-        Stock stock = stockRepository.findById(1L).orElseThrow();
+        for (Long id : ids) {
+            assertEquals(0L, stockRepository.findById(id).orElseThrow().getQuantity());
+        }
+    }
 
-        assertEquals(0L, stock.getQuantity());
+    /**
+     * 품목 수에 따른 지연시간은 StockDecreaseAllBenchmark 로 잰다.
+     */
+    @Test
+    void decreaseAll_by_item_count() {
+        for (int itemCount : new int[]{5, 50}) {
+            List<Long> ids = createStocks(itemCount, 1000L);
+            for (int i = 0; i < 100; i++) {
+                stockService.decreaseAll(shuffledOrder(ids));
+            }
+
+            for (Long id : ids) {
+                assertEquals(900L, stockRepository.findById(id).orElseThrow().getQuantity());
+            }
+        }
+    }
+
+    @Test
+    void decreaseAll_missing_stock() {
+        List<Long> ids = createStocks(2, 10L);
+        Map<Long, Long> order = shuffledOrder(ids);
+        order.put(-1L, 1L);
+
+        assertThatThrownBy(() -> stockService.decreaseAll(order))
+                .isInstanceOf(NoSuchElementException.class)
+                .hasMessageContaining("-1");
+        for (Long id : ids) {
+            assertEquals(10L, stockRepository.findById(id).orElseThrow().getQuantity());
+        }
+    }
+
+    @Test
+    void decreaseAll_rejects_non_positive_quantity() {
+        List<Long> ids = createStocks(2, 10L);
+        Map<Long, Long> order = shuffledOrder(ids);
+        order.put(ids.get(0), -5L);
+
+        assertThatThrownBy(() -> stockService.decreaseAll(order))
+                .isInstanceOf(IllegalArgumentException.class);
+        for (Long id : ids) {
+            assertEquals(10L, stockRepository.findById(id).orElseThrow().getQuantity());
+        }
+    }
+
+    private List<Long> createStocks(int count, Long quantity) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(stockRepository.saveAndFlush(new Stock((long) i, quantity)).getId());
+        }
+        return ids;
+    }
+
+    private Map<Long, Long> shuffledOrder(List<Long> ids) {
+        List<Long> shuffled = new ArrayList<>(ids);
+        Collections.shuffle(shuffled);
+
+        Map<Long, Long> order = new LinkedHashMap<>();
+        shuffled.forEach(id -> order.put(id, 1L));
+        return order;
     }
-}
\ No newline at end of file
+}
@@ -2,12 +2,16 @@ package com.example.concurrency.service;
 
 import com.example.concurrency.domain.Stock;
 import com.example.concurrency.repository.StockRepository;
+import java.time.Duration;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 @SpringBootTest
 class StockSynchronizedServiceTest {
@@ -18,6 +22,12 @@ class StockSynchronizedServiceTest {
     @Autowired
     private StockSynchronizedService stockSynchronizedService;
 
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @BeforeEach
     public void before() {
         Stock stock = new Stock(1L, 100L);
@@ -68,4 +78,44 @@ class StockSynchronizedServiceTest {
         increaseB.join();
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("다른 경로에서 변경한 재고는 캐시 무효화 후 다시 읽는다")
+    void evict_after_external_write() {
+        Long id = stockRepository.saveAndFlush(new Stock(3L, 10L)).getId();
+
+        stockSynchronizedService.decreaseProcess(id, 1L);
+        stockService.decrease(id, 5L);
+        stockSynchronizedService.evict(id);
+        stockSynchronizedService.decreaseProcess(id, 1L);
+
+        assertThat(stockRepository.findById(id).orElseThrow().getQuantity()).isEqualTo(3L);
+    }
+
+    @Test
+    @DisplayName("다른 경로에서 변경한 재고를 캐시의 이전 값으로 덮어쓰지 않는다")
+    void external_write_is_not_overwritten() {
+        Long id = stockRepository.saveAndFlush(new Stock(3L, 10L)).getId();
+
+        stockSynchronizedService.decreaseProcess(id, 1L);
+        stockService.decrease(id, 5L);
+        stockSynchronizedService.decreaseProcess(id, 1L);
+        assertThat(stockRepository.findById(id).orElseThrow().getQuantity()).isEqualTo(3L);
+
+        stockService.increase(id, 10L);
+        stockSynchronizedService.decreaseProcess(id, 13L);
+        assertThat(stockRepository.findById(id).orElseThrow().getQuantity()).isEqualTo(0L);
+    }
+
+    @Test
+    @DisplayName("캐시가 DB 보다 적으면 기다리기 전에 DB 에서 다시 읽는다")
+    void reload_before_waiting() {
+        Long id = stockRepository.saveAndFlush(new Stock(3L, 10L)).getId();
+        stockSynchronizedService.decreaseProcess(id, 1L);
+
+        // 다른 노드의 입고. 이 노드에는 이벤트가 오지 않는다.
+        jdbcTemplate.update("update stock set quantity = quantity + 10 where id = ?", id);
+
+        stockSynchronizedService.decreaseProcess(id, 15L, Duration.ofMillis(100));
+        assertThat(stockRepository.findById(id).orElseThrow().getQuantity()).isEqualTo(4L);
+    }
+}
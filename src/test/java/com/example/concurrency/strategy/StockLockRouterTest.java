@@ -0,0 +1,83 @@
+package com.example.concurrency.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.example.concurrency.domain.Stock;
+import com.example.concurrency.repository.StockRepository;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class StockLockRouterTest {
+
+    @Autowired
+    private StockLockRouter stockLockRouter;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    private Long stockId;
+
+    @BeforeEach
+    public void before() {
+        stockId = stockRepository.saveAndFlush(new Stock(1L, 1000L)).getId();
+    }
+
+    @AfterEach
+    public void after() {
+        stockRepository.deleteAll();
+    }
+
+    @Test
+    void cold_stock_uses_optimistic() {
+        for (int i = 0; i < 10; i++) {
+            stockLockRouter.decrease(stockId, 1L);
+        }
+
+        StockContention contention = stockLockRouter.getContention(stockId);
+        assertEquals(StockLockType.OPTIMISTIC, contention.getType());
+        assertEquals(0L, contention.getSwitches());
+        assertEquals(990L, stockRepository.findById(stockId).orElseThrow().getQuantity());
+    }
+
+    /**
+     * 동시 요청이 몰리면 hot 전략으로 바뀌고, 부하가 빠지면 다시 cold 전략으로 돌아온다.
+     */
+    @Test
+    void hot_stock_switches_and_returns() throws InterruptedException {
+        int threadCount = 500;
+        ExecutorService executorService = Executors.newFixedThreadPool(32);
+        CountDownLatch countDownLatch = new CountDownLatch(threadCount);
+
+        for (int i = 0; i < threadCount; i++) {
+            executorService.submit(() -> {
+                try {
+                    stockLockRouter.decrease(stockId, 1L);
+                } finally {
+                    countDownLatch.countDown();
+                }
+            });
+        }
+
+        countDownLatch.await();
+
+        StockContention contention = stockLockRouter.getContention(stockId);
+        System.out.println("[check] concurrency=" + contention.getConcurrency() + ", switches=" + contention.getSwitches());
+        assertTrue(contention.getSwitches() >= 1);
+        assertEquals(500L, stockRepository.findById(stockId).orElseThrow().getQuantity());
+
+        for (int i = 0; i < 50; i++) {
+            stockLockRouter.decrease(stockId, 1L);
+        }
+
+        assertEquals(StockLockType.OPTIMISTIC, contention.getType());
+        assertEquals(450L, stockRepository.findById(stockId).orElseThrow().getQuantity());
+    }
+}